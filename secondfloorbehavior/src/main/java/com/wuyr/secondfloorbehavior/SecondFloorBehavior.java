@@ -6,17 +6,22 @@ import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.ContextWrapper;
 import android.content.res.TypedArray;
+import android.graphics.drawable.ColorDrawable;
+import android.os.Build;
 import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewConfiguration;
 import android.view.ViewGroup;
+import android.view.ViewParent;
 import android.view.animation.Interpolator;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.coordinatorlayout.widget.CoordinatorLayout;
+import androidx.core.view.ViewCompat;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -61,37 +66,27 @@ public class SecondFloorBehavior extends CoordinatorLayout.Behavior<View> {
 
     private int mState = STATE_NORMAL;
 
-    /**
-     * 开始拦截下拉的滑动距离
-     * （即：列表滑动到顶后，往下拉多长距离可以开始触发二楼的下拉？）
-     */
-    private float mStartInterceptDistance;
-
-    /**
-     * 能够进入二楼的滑动距离(从触发上面的二楼下拉后开始计算)
-     * （即：拦截下拉后，至少还要继续往下滑动多长距离才能够触发进入二楼？）
-     */
-    private float mMinTriggerDistance;
-
-    /**
-     * 触发下拉后的滑动距离衰减率
-     */
-    private float mDampingRatio;
+    //HeaderView的高度，用来计算没有指定时默认的滑动距离
+    private int mHeaderHeight;
 
-    /**
-     * 回退的动画时长
-     */
-    private long mRollbackDuration;
+    //画在一楼Overlay上的遮罩，不需要额外添加View
+    private ColorDrawable mScrimDrawable;
+    private float mScrimProgress = -1;
 
-    /**
-     * 进入二楼的动画时长
-     */
-    private long mEnterDuration;
+    //手势还没有确定方向
+    private static final int GESTURE_UNDECIDED = 0;
+    //本次手势交给一楼自己处理，不拦截
+    private static final int GESTURE_IGNORED = 1;
+    //本次手势已经被拦截
+    private static final int GESTURE_INTERCEPTED = 2;
 
-    /**
-     * 退出二楼的动画时长
-     */
-    private long mExitDuration;
+    private int mGestureType = GESTURE_IGNORED;
+    private int mInterceptPointerId = MotionEvent.INVALID_POINTER_ID;
+    private float mInterceptDownX;
+    private float mInterceptDownY;
+    private int mTouchSlop = -1;
+    //拦截之前一楼已经收到过事件了，拦截后要重新给一楼补发DOWN事件
+    private boolean mNeedRestartGesture;
 
     private int mActivePointerId = MotionEvent.INVALID_POINTER_ID;
     private int mLastDispatchPointerId = MotionEvent.INVALID_POINTER_ID;
@@ -105,23 +100,68 @@ public class SecondFloorBehavior extends CoordinatorLayout.Behavior<View> {
 
     private boolean mDragging;
     private boolean mPullDownStarted;
-    private boolean mNeedCheckInsertEvent;
+    //一楼当前认为处于按下状态的手指id（按位记录），拦截期间被吞掉的手指变化要在下次分发前补上
+    private int mDispatchedPointerIdBits;
+
+    //是否正在通过beginDrag/dragBy/endDrag主动拖动
+    private boolean mProgrammaticDragging;
+
+    //本次MOVE事件处理过程中的目标偏移量
+    private float mMoveTranslationY;
+    private boolean mMoveTranslationChanged;
+
+    //当前叠加在真实偏移量上的预测偏移量
+    private float mPredictionOffsetY;
+    private final TouchPredictor mTouchPredictor = new TouchPredictor();
+    //手指停住后不会再有MOVE事件，要在预测时长过去后主动去掉预测的偏移量，否则HeaderView会一直停在手指前面
+    private final Runnable mClearPredictionRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mDragging) {
+                clearPredictionOffset();
+            }
+        }
+    };
+
+    //一楼中接受了本次手势的嵌套滑动子View，开启直接分发后用来跳过中间层级直接分发MOVE事件
+    private View mTouchTarget;
+    //mTouchTarget是否自己消费过滑动距离（跟RecyclerView一样，消费了滑动距离的子View会禁止父View拦截事件）
+    private boolean mTouchTargetScrolling;
+    //本次手势中是否收到过requestDisallowInterceptTouchEvent发出的ACTION_CANCEL事件
+    private boolean mDisallowInterceptRequested;
+    //一楼坐标系到mTouchTarget坐标系的偏移量
+    private float mTouchTargetOffsetX;
+    private float mTouchTargetOffsetY;
 
     //寄主
     private ViewGroup mParent;
 
-    private Interpolator mExitAnimationInterpolator;
-    private Interpolator mEnterAnimationInterpolator;
+    //当前生效的配置，所有的配置项都直接从这里读取
+    //多个Behavior可以共享同一个配置，调用setter时才会基于它派生出当前Behavior独有的配置，不会影响其他Behavior
+    private SecondFloorConfig mConfig;
 
     private OnBeforeEnterSecondFloorListener mOnBeforeEnterSecondFloorListener;
     private OnEnterSecondFloorListener mOnEnterSecondFloorListener;
     private OnExitSecondFloorListener mOnExitSecondFloorListener;
     private OnStateChangeListener mOnStateChangeListener;
 
+    public SecondFloorBehavior() {
+        this(SecondFloorConfig.DEFAULT);
+    }
+
+    /**
+     * 通过代码创建，多个Behavior可以共享同一个配置
+     *
+     * @param config 配置，见{@link SecondFloorConfig.Builder}
+     */
+    public SecondFloorBehavior(@NonNull SecondFloorConfig config) {
+        mConfig = config;
+    }
+
     public SecondFloorBehavior(Context context, AttributeSet attrs) {
         super(context, attrs);
         TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.CoordinatorLayout_Layout);
-        initAttributes(a);
+        mConfig = SecondFloorConfig.fromTypedArray(a);
         initListener(context, a);
         a.recycle();
     }
@@ -153,21 +193,6 @@ public class SecondFloorBehavior extends CoordinatorLayout.Behavior<View> {
         }
     }
 
-    private void initAttributes(TypedArray a) {
-        mStartInterceptDistance = a.getDimensionPixelSize(R.styleable.CoordinatorLayout_Layout_layout_startInterceptDistance, 0);
-        mMinTriggerDistance = a.getDimensionPixelSize(R.styleable.CoordinatorLayout_Layout_layout_minTriggerOffset, 0);
-        mDampingRatio = a.getFloat(R.styleable.CoordinatorLayout_Layout_layout_dampingRatio, 0);
-        if (mDampingRatio > 1) {
-            mDampingRatio = 1;
-        } else if (mDampingRatio < 0) {
-            mDampingRatio = 0;
-        }
-        mDampingRatio = 1F - mDampingRatio;
-        mRollbackDuration = a.getInt(R.styleable.CoordinatorLayout_Layout_layout_rollbackDuration, 200);
-        mEnterDuration = a.getInt(R.styleable.CoordinatorLayout_Layout_layout_enterDuration, 500);
-        mExitDuration = a.getInt(R.styleable.CoordinatorLayout_Layout_layout_exitDuration, 400);
-    }
-
     /**
      * 进入二楼
      */
@@ -186,94 +211,491 @@ public class SecondFloorBehavior extends CoordinatorLayout.Behavior<View> {
         }
         onStateChange(STATE_CLOSING);
 
-        smoothTranslationBy(getHeaderView(), 0, mExitDuration, mExitAnimationInterpolator, new AnimatorListenerAdapter() {
+        long duration = mConfig.getExitDuration();
+        Interpolator interpolator = mConfig.getExitAnimationInterpolator();
+        smoothTranslationBy(getHeaderView(), 0, duration, interpolator, new AnimatorListenerAdapter() {
             @Override
             public void onAnimationEnd(Animator animation) {
                 onStateChange(STATE_NORMAL);
             }
         });
-        smoothTranslationBy(getSecondFloorView(), 0, mExitDuration, mExitAnimationInterpolator, null);
-        smoothTranslationBy(getFirstFloorView(), 0, mExitDuration, mExitAnimationInterpolator, null);
+        smoothTranslationBy(getSecondFloorView(), 0, duration, interpolator, null);
+        smoothTranslationBy(getFirstFloorView(), 0, duration, interpolator, null);
 
         if (mOnExitSecondFloorListener != null) {
             mOnExitSecondFloorListener.onExitSecondFloor();
         }
     }
 
+    /**
+     * 开始主动拖动（不需要构造触摸事件），之后通过{@link #dragBy(float)}拖动，最后调用{@link #endDrag()}结束
+     * 拖动过程中的衰减、偏移量限制和状态变化都跟手指拖动一样
+     *
+     * @return 是否成功开始拖动，正在手指拖动、播放动画或者已经在二楼时会返回false
+     */
+    public boolean beginDrag() {
+        if (mParent == null || mDragging || mProgrammaticDragging || isAnimationPlaying() || isOnOrGoingToSecondFloor()) {
+            return false;
+        }
+        mProgrammaticDragging = true;
+        mPullDownOffset = 0;
+        mLastMoveOffset = 0;
+        mPredictionOffsetY = 0;
+        onStateChange(STATE_DRAGGING);
+        return true;
+    }
+
+    /**
+     * 主动拖动
+     *
+     * @param dy 拖动的距离（向下为正），会经过衰减
+     */
+    public void dragBy(float dy) {
+        if (!mProgrammaticDragging) {
+            return;
+        }
+        mMoveTranslationY = getHeaderView().getTranslationY();
+        mMoveTranslationChanged = false;
+        offsetChildren(dy * getDampingFactor());
+        if (mMoveTranslationChanged) {
+            translationChildrenY(mMoveTranslationY);
+        }
+    }
+
+    /**
+     * 结束主动拖动，跟手指抬起时一样：拖动距离达到触发距离则进入二楼，否则回退
+     */
+    public void endDrag() {
+        if (!mProgrammaticDragging) {
+            return;
+        }
+        mProgrammaticDragging = false;
+        mPullDownOffset = 0;
+        mLastMoveOffset = 0;
+        //跟handleActionUp使用同一个判断条件
+        if (getHeaderView().getTranslationY() >= getMinTriggerDistance()) {
+            gotoSecondFloor(null, false);
+        } else {
+            rollback();
+        }
+        if (!isAnimationPlaying()) {
+            onStateChange(STATE_NORMAL);
+        }
+    }
+
     @Override
     public boolean onInterceptTouchEvent(@NonNull CoordinatorLayout parent, @NonNull View child, @NonNull MotionEvent ev) {
+        //已经进入二楼，不拦截
+        if (mState == STATE_OPENED) {
+            return false;
+        }
         //只要还没有进入二楼，就要拦截事件
-        return mState != STATE_OPENED;
+        if (!mConfig.isAxisLockEnabled() || parent.isInEditMode() || isAnimationPlaying() || mProgrammaticDragging) {
+            return true;
+        }
+        switch (ev.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                mNeedRestartGesture = false;
+                mInterceptPointerId = ev.getPointerId(0);
+                mInterceptDownX = ev.getX();
+                mInterceptDownY = ev.getY();
+                //一楼还没有滑动到顶部，本次手势不可能触发二楼的下拉，直接交给一楼处理
+                mGestureType = canFirstFloorScrollUp(ev.getX(), ev.getY()) ? GESTURE_IGNORED : GESTURE_UNDECIDED;
+                return false;
+            case MotionEvent.ACTION_MOVE:
+                return mGestureType == GESTURE_UNDECIDED && classifyGesture(parent, ev);
+            case MotionEvent.ACTION_POINTER_DOWN:
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                //多指或者没有滑动过的手势都不处理
+                mGestureType = GESTURE_IGNORED;
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 根据滑动方向判断本次手势是否需要拦截
+     *
+     * @return 超过了TouchSlop，并且是往下拉的手势时返回true
+     */
+    private boolean classifyGesture(@NonNull CoordinatorLayout parent, @NonNull MotionEvent ev) {
+        int pointerIndex = ev.findPointerIndex(mInterceptPointerId);
+        if (pointerIndex == -1 || ev.getPointerCount() != 1) {
+            mGestureType = GESTURE_IGNORED;
+            return false;
+        }
+        if (mTouchSlop < 0) {
+            mTouchSlop = ViewConfiguration.get(parent.getContext()).getScaledTouchSlop();
+        }
+        float dx = ev.getX(pointerIndex) - mInterceptDownX;
+        float dy = ev.getY(pointerIndex) - mInterceptDownY;
+        if (Math.abs(dx) <= mTouchSlop && Math.abs(dy) <= mTouchSlop) {
+            return false;
+        }
+        //只有往下拉的手势才可能触发二楼，横向滑动和往上滑动都交给一楼处理
+        if (dy > 0 && dy > Math.abs(dx)) {
+            mGestureType = GESTURE_INTERCEPTED;
+            mNeedRestartGesture = true;
+            return true;
+        }
+        mGestureType = GESTURE_IGNORED;
+        return false;
+    }
+
+    /**
+     * 判断一楼中位于触摸点的View能否继续往上滚动（即：还没有滑动到顶部）
+     *
+     * @param x CoordinatorLayout坐标系中的x坐标
+     * @param y CoordinatorLayout坐标系中的y坐标
+     */
+    private boolean canFirstFloorScrollUp(float x, float y) {
+        View firstFloorView = getFirstFloorView();
+        return canScrollUpAt(firstFloorView, x - firstFloorView.getLeft() - firstFloorView.getTranslationX(),
+                y - firstFloorView.getTop() - firstFloorView.getTranslationY());
+    }
+
+    /**
+     * @param x view坐标系中的x坐标
+     * @param y view坐标系中的y坐标
+     */
+    private boolean canScrollUpAt(@NonNull View view, float x, float y) {
+        if (view.canScrollVertically(-1)) {
+            return true;
+        }
+        if (view instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup) view;
+            //从最上层的子View开始找
+            for (int i = group.getChildCount() - 1; i >= 0; i--) {
+                View child = group.getChildAt(i);
+                if (child.getVisibility() != View.VISIBLE) {
+                    continue;
+                }
+                float childX = x + group.getScrollX() - child.getLeft() - child.getTranslationX();
+                float childY = y + group.getScrollY() - child.getTop() - child.getTranslationY();
+                if (childX >= 0 && childY >= 0 && childX < child.getWidth() && childY < child.getHeight()) {
+                    return canScrollUpAt(child, childX, childY);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 在手势中途开始拦截后，一楼已经收到了ACTION_CANCEL，所以要给一楼补发一个DOWN事件
+     * DOWN事件放在原来按下的位置，接下来的MOVE事件照常分发，这样一楼中的子View只需要消耗一次TouchSlop
+     */
+    private void restartGesture(@NonNull MotionEvent ev) {
+        int pointerIndex = findValidActionIndex(ev, mInterceptPointerId);
+        float rawOffsetX = ev.getRawX() - ev.getX();
+        float rawOffsetY = ev.getRawY() - ev.getY();
+        MotionEvent downEvent = reassignEventId(ev, ev.getPointerId(pointerIndex), MotionEvent.ACTION_DOWN,
+                mInterceptDownX + rawOffsetX, mInterceptDownY + rawOffsetY);
+        downEvent.offsetLocation(-rawOffsetX, -rawOffsetY);
+        handleActionDown(downEvent);
+        dispatchTouchEvent(downEvent);
+        downEvent.recycle();
     }
 
     @Override
     public boolean onTouchEvent(@NonNull CoordinatorLayout parent, @NonNull View child, @NonNull MotionEvent ev) {
         if (parent.isInEditMode()) return true;
         if (isAnimationPlaying()) return true;
+        //主动拖动期间忽略触摸事件
+        if (mProgrammaticDragging) return true;
+
+        if (mNeedRestartGesture) {
+            mNeedRestartGesture = false;
+            //拦截之后收到的第一个事件，多指的情况不好还原，直接放弃本次手势
+            if (ev.getActionMasked() == MotionEvent.ACTION_MOVE && ev.getPointerCount() == 1) {
+                restartGesture(ev);
+            }
+        }
 
         //还没有开始拖动就收到了DOWN之外的事件，不作处理
         if (!mDragging && ev.getActionMasked() != MotionEvent.ACTION_DOWN) {
             return true;
         }
 
-        boolean handled = false;
+        boolean trace = TraceHelper.isEnabled();
+        if (trace) {
+            TraceHelper.beginSection(TraceHelper.getTouchSectionName(ev.getActionMasked()));
+        }
+        //注意：不能把下面的逻辑抽到其他方法中，因为要通过固定的调用栈深度来判断requestDisallowInterceptTouchEvent
+        try {
+            boolean handled = false;
+            //是否为requestDisallowInterceptTouchEvent方法发出的ACTION_CANCEL事件
+            //方法名用endsWith判断，兼容字节码插桩后被重命名的方法（比如Robolectric）
+            boolean disallowInterceptCancel = ev.getAction() == MotionEvent.ACTION_CANCEL && Thread.currentThread().getStackTrace()[4].getMethodName().endsWith("requestDisallowInterceptTouchEvent");
+            if (disallowInterceptCancel) {
+                mDisallowInterceptRequested = true;
+            }
+
+            switch (ev.getActionMasked()) {
+                case MotionEvent.ACTION_POINTER_DOWN:
+                    handled = handleActionPointerDown(ev);
+                    break;
+                case MotionEvent.ACTION_DOWN:
+                    handleActionDown(ev);
+                    break;
+                case MotionEvent.ACTION_MOVE:
+                    handled = handleActionMove(ev);
+                    break;
+                case MotionEvent.ACTION_POINTER_UP:
+                    handled = handleActionPointerUp(ev);
+                    break;
+                case MotionEvent.ACTION_UP:
+                    handled = handleActionUp(ev);
+                    break;
+                case MotionEvent.ACTION_CANCEL:
+                    if (!mDragging) {
+                        handled = true;
+                    } else if (!disallowInterceptCancel) {
+                        handleActionCancel();
+                    }
+                    break;
+            }
+            //判断是否要彻底拦截事件，有以下2种情况：
+            //1. 上面处理滑动的逻辑需要拦截；
+            //2. 收到了来自requestDisallowInterceptTouchEvent方法发出的ACTION_CANCEL事件
+            if (handled || disallowInterceptCancel) {
+                return true;
+            }
+            return dispatchTouchEvent(ev);
+        } finally {
+            if (trace) {
+                TraceHelper.endSection();
+            }
+        }
+    }
 
+    private boolean dispatchTouchEvent(@NonNull MotionEvent ev) {
+        boolean trace = TraceHelper.isEnabled();
+        if (trace) {
+            TraceHelper.beginSection(TraceHelper.SECTION_DISPATCH);
+        }
+        try {
+            return dispatchTouchEventInternal(ev);
+        } finally {
+            if (trace) {
+                TraceHelper.endSection();
+            }
+        }
+    }
+
+    private boolean dispatchTouchEventInternal(@NonNull MotionEvent ev) {
+        if (ev.getActionMasked() != MotionEvent.ACTION_DOWN && mDispatchedPointerIdBits == 0) {
+            //一楼的事件序列已经结束了（比如收到不完整的事件后被取消了），不能中途重新开始，等下一个DOWN事件
+            return true;
+        }
+        //拦截期间一楼收不到手指的按下和抬起，分发之前先把一楼的手指补齐，保证一楼收到的事件序列是完整的
+        int pointerIdBits = getPointerIdBits(ev);
         switch (ev.getActionMasked()) {
-            case MotionEvent.ACTION_POINTER_DOWN:
-                handled = handleActionPointerDown(ev);
-                break;
             case MotionEvent.ACTION_DOWN:
-                handleActionDown(ev);
+                //上一个事件序列还没有结束
+                syncDispatchedPointers(ev, 0);
                 break;
-            case MotionEvent.ACTION_MOVE:
-                handled = handleActionMove(ev);
+            case MotionEvent.ACTION_POINTER_DOWN:
+                syncDispatchedPointers(ev, pointerIdBits & ~(1 << ev.getPointerId(ev.getActionIndex())));
                 break;
             case MotionEvent.ACTION_POINTER_UP:
-                handled = handleActionPointerUp(ev);
+                //不完整的事件序列：最后一根手指通过POINTER_UP抬起，一楼没办法正确处理，直接取消
+                syncDispatchedPointers(ev, pointerIdBits == 1 << ev.getPointerId(ev.getActionIndex()) ? 0 : pointerIdBits);
                 break;
             case MotionEvent.ACTION_UP:
-                handled = handleActionUp(ev);
+                //不完整的事件序列：还有其他手指没有抬起，同样直接取消
+                syncDispatchedPointers(ev, ev.getPointerCount() == 1 ? pointerIdBits : 0);
                 break;
             case MotionEvent.ACTION_CANCEL:
-                if (!mDragging) {
-                    handled = true;
-                }
+                break;
+            default:
+                syncDispatchedPointers(ev, pointerIdBits);
                 break;
         }
-        //判断是否要彻底拦截事件，有以下2种情况：
-        //1. 上面处理滑动的逻辑需要拦截；
-        //2. 收到了来自requestDisallowInterceptTouchEvent方法发出的ACTION_CANCEL事件
-        if (handled || ev.getAction() == MotionEvent.ACTION_CANCEL && Thread.currentThread().getStackTrace()[4].getMethodName().equals("requestDisallowInterceptTouchEvent")) {
+        if (ev.getActionMasked() != MotionEvent.ACTION_DOWN && mDispatchedPointerIdBits == 0) {
+            //一楼的事件序列被取消了
             return true;
         }
-        return dispatchTouchEvent(ev);
+        updateDispatchLocation(ev);
+        if (ev.getActionMasked() == MotionEvent.ACTION_MOVE) {
+            //多指的时候ViewGroup可能会拆分事件，只有单指的MOVE事件才能直接分发
+            View touchTarget = ev.getPointerCount() == 1 ? findDirectTouchTarget() : null;
+            if (touchTarget != null) {
+                //跟ViewGroup分发给子View一样，先换算到子View的坐标系，分发完再还原
+                ev.offsetLocation(mTouchTargetOffsetX, mTouchTargetOffsetY);
+                boolean handled = touchTarget.dispatchTouchEvent(ev);
+                ev.offsetLocation(-mTouchTargetOffsetX, -mTouchTargetOffsetY);
+                return handled;
+            }
+        }
+        return dispatchToFirstFloor(ev);
     }
 
-    private boolean dispatchTouchEvent(@NonNull MotionEvent ev) {
-        if (mNeedCheckInsertEvent) {
-            mNeedCheckInsertEvent = false;
-            MotionEvent insertEvent = null;
-            //防止距离足够触发二楼时，往回拉时换了手指，有以下几种情况:
-            //1. 手指抬起时，原来的指针id无效；
-            //2. 手指移动时，原来的指针id无效；
-            //3. 手指移动时，原来的指针id无效，但当前指针id有效；
-            //4. 手指移动时，由最开始的多指变为单指；
-            boolean pointerIdInvalid = mLastDispatchPointerId == MotionEvent.INVALID_POINTER_ID || ev.findPointerIndex(mLastDispatchPointerId) == -1;
-            if (ev.getAction() == MotionEvent.ACTION_UP && pointerIdInvalid ||
-                    ev.getAction() == MotionEvent.ACTION_MOVE && pointerIdInvalid || mLastDispatchPointerId == mActivePointerId && ev.getPointerCount() == 1) {
-                insertEvent = MotionEvent.obtain(ev);
-            }
-            //手动滑回来的时候找不到之前的手指id，所以现在要模拟新手指按下和旧手指抬起
-            if (insertEvent != null) {
-                insertEvent.setAction(MotionEvent.ACTION_POINTER_DOWN);
-                getFirstFloorView().dispatchTouchEvent(insertEvent);
-                insertEvent.recycle();
-            }
+    /**
+     * 所有交给一楼的事件都要经过这里，以记录一楼当前按下的手指
+     */
+    private boolean dispatchToFirstFloor(@NonNull MotionEvent ev) {
+        //先更新再分发，分发过程中可能会重入
+        switch (ev.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                mDispatchedPointerIdBits = 1 << ev.getPointerId(0);
+                break;
+            case MotionEvent.ACTION_POINTER_DOWN:
+                mDispatchedPointerIdBits |= 1 << ev.getPointerId(ev.getActionIndex());
+                break;
+            case MotionEvent.ACTION_POINTER_UP:
+                mDispatchedPointerIdBits &= ~(1 << ev.getPointerId(ev.getActionIndex()));
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                mDispatchedPointerIdBits = 0;
+                break;
+            default:
+                break;
+        }
+        if (ev.getActionMasked() != MotionEvent.ACTION_MOVE) {
+            //UP、CANCEL和手指变化的事件仍然需要经过完整的分发流程，让中间层级能正确地重置触摸状态
+            mTouchTargetScrolling = false;
         }
-        updateDispatchLocation(ev);
         return getFirstFloorView().dispatchTouchEvent(ev);
     }
 
+    /**
+     * 给一楼补发手指的按下和抬起事件，让一楼按下的手指变成targetPointerIdBits
+     * 先补发按下再补发抬起，这样中间不会因为手指全部抬起而结束事件序列
+     * 一楼的事件序列已经结束时不做任何事情
+     *
+     * @param originEvent         用来获取坐标等信息的原事件
+     * @param targetPointerIdBits 目标手指id（按位记录），0: 取消一楼的事件序列
+     */
+    private void syncDispatchedPointers(@NonNull MotionEvent originEvent, int targetPointerIdBits) {
+        if (mDispatchedPointerIdBits == targetPointerIdBits || mDispatchedPointerIdBits == 0) {
+            return;
+        }
+        if (targetPointerIdBits == 0) {
+            MotionEvent cancelEvent = obtainPointerEvent(originEvent, mDispatchedPointerIdBits, MotionEvent.ACTION_CANCEL, -1);
+            dispatchToFirstFloor(cancelEvent);
+            cancelEvent.recycle();
+            return;
+        }
+        int missingBits = targetPointerIdBits & ~mDispatchedPointerIdBits;
+        while (missingBits != 0) {
+            int id = Integer.numberOfTrailingZeros(missingBits);
+            missingBits &= ~(1 << id);
+            MotionEvent downEvent = obtainPointerEvent(originEvent, mDispatchedPointerIdBits | 1 << id, MotionEvent.ACTION_POINTER_DOWN, id);
+            dispatchToFirstFloor(downEvent);
+            downEvent.recycle();
+        }
+        int staleBits = mDispatchedPointerIdBits & ~targetPointerIdBits;
+        while (staleBits != 0) {
+            int id = Integer.numberOfTrailingZeros(staleBits);
+            staleBits &= ~(1 << id);
+            MotionEvent upEvent = obtainPointerEvent(originEvent, mDispatchedPointerIdBits, MotionEvent.ACTION_POINTER_UP, id);
+            dispatchToFirstFloor(upEvent);
+            upEvent.recycle();
+        }
+    }
+
+    /**
+     * 以原事件中各手指的当前位置创建一个包含指定手指的事件
+     */
+    private MotionEvent obtainPointerEvent(@NonNull MotionEvent originEvent, int pointerIdBits, int action, int actionPointerId) {
+        return obtainPointerEvent(originEvent, originEvent.getHistorySize(), pointerIdBits, action, actionPointerId, 0);
+    }
+
+    /**
+     * 以原事件中各手指在指定采样点的位置创建一个包含指定手指的事件，手指按id从小到大排列
+     * 原事件中没有的手指（已经抬起了）使用第一根手指的位置
+     *
+     * @param pos             采样点位置，等于{@link MotionEvent#getHistorySize()}时表示当前采样点
+     * @param actionPointerId POINTER_DOWN和POINTER_UP对应的手指id，其他事件传-1
+     * @param offsetY         每根手指y坐标的偏移量
+     */
+    private MotionEvent obtainPointerEvent(@NonNull MotionEvent originEvent, int pos, int pointerIdBits, int action, int actionPointerId, float offsetY) {
+        int pointerCount = Integer.bitCount(pointerIdBits);
+        MotionEvent.PointerProperties[] pointerProperties = new MotionEvent.PointerProperties[pointerCount];
+        MotionEvent.PointerCoords[] pointerCoords = new MotionEvent.PointerCoords[pointerCount];
+        boolean historical = pos < originEvent.getHistorySize();
+        //跟reassignEventId一样，先以屏幕坐标创建，再换算回原事件的坐标系，这样rawX/rawY才是正确的
+        //rawX/rawY没有历史值，用当前采样点的坐标差来换算
+        float rawOffsetX = originEvent.getRawX() - originEvent.getX();
+        float rawOffsetY = originEvent.getRawY() - originEvent.getY();
+        int actionIndex = 0;
+        for (int i = 0, id = 0; i < pointerCount; id++) {
+            if ((pointerIdBits & (1 << id)) == 0) {
+                continue;
+            }
+            if (id == actionPointerId) {
+                actionIndex = i;
+            }
+            int originIndex = findValidActionIndex(originEvent, id);
+            pointerProperties[i] = new MotionEvent.PointerProperties();
+            originEvent.getPointerProperties(originIndex, pointerProperties[i]);
+            pointerProperties[i].id = id;
+            pointerCoords[i] = new MotionEvent.PointerCoords();
+            if (historical) {
+                originEvent.getHistoricalPointerCoords(originIndex, pos, pointerCoords[i]);
+            } else {
+                originEvent.getPointerCoords(originIndex, pointerCoords[i]);
+            }
+            pointerCoords[i].x += rawOffsetX;
+            pointerCoords[i].y += rawOffsetY + offsetY;
+            i++;
+        }
+        MotionEvent event = MotionEvent.obtain(originEvent.getDownTime(), historical ? originEvent.getHistoricalEventTime(pos) : originEvent.getEventTime(),
+                action | actionIndex << MotionEvent.ACTION_POINTER_INDEX_SHIFT, pointerCount, pointerProperties, pointerCoords,
+                originEvent.getMetaState(), originEvent.getButtonState(), originEvent.getXPrecision(), originEvent.getYPrecision(),
+                originEvent.getDeviceId(), originEvent.getEdgeFlags(), originEvent.getSource(), originEvent.getFlags());
+        event.offsetLocation(-rawOffsetX, -rawOffsetY);
+        return event;
+    }
+
+    private static int getPointerIdBits(@NonNull MotionEvent ev) {
+        int bits = 0;
+        for (int i = 0; i < ev.getPointerCount(); i++) {
+            bits |= 1 << ev.getPointerId(i);
+        }
+        return bits;
+    }
+
+    /**
+     * 查找可以直接分发MOVE事件的子View，同时计算出坐标偏移量
+     * 只有子View自己消费了滑动距离，并且禁止了父View拦截事件之后，中间层级才不会再拦截MOVE事件，
+     * 这时候跳过中间层级跟完整的分发流程的结果是一样的
+     *
+     * @return 无法直接分发时返回null
+     */
+    @Nullable
+    private View findDirectTouchTarget() {
+        if (!mConfig.isDirectDispatchEnabled() || mTouchTarget == null || !mTouchTargetScrolling || !mDisallowInterceptRequested) {
+            return null;
+        }
+        View firstFloorView = getFirstFloorView();
+        float offsetX = 0, offsetY = 0;
+        View view = mTouchTarget;
+        while (view != firstFloorView) {
+            ViewParent parent = view.getParent();
+            if (!(parent instanceof View)) {
+                //已经不在一楼里面了
+                mTouchTarget = null;
+                mTouchTargetScrolling = false;
+                return null;
+            }
+            //有变换矩阵的话就不能简单地换算坐标，交给完整的分发流程处理
+            if (!view.getMatrix().isIdentity()) {
+                return null;
+            }
+            View parentView = (View) parent;
+            offsetX += parentView.getScrollX() - view.getLeft();
+            offsetY += parentView.getScrollY() - view.getTop();
+            view = parentView;
+        }
+        mTouchTargetOffsetX = offsetX;
+        mTouchTargetOffsetY = offsetY;
+        return mTouchTarget;
+    }
+
     private void updateDispatchLocation(@NonNull MotionEvent ev) {
         int pi = findValidActionIndex(ev, mLastDispatchPointerId);
         mLastDispatchY = ev.getY(pi);
@@ -285,9 +707,11 @@ public class SecondFloorBehavior extends CoordinatorLayout.Behavior<View> {
         mActivePointerId = MotionEvent.INVALID_POINTER_ID;
         mLastY = 0;
         if (mDragging) {
-            if (mPullDownStarted && mPullDownOffset < -mStartInterceptDistance) {
+            //抬起时先去掉预测的偏移量，以真实的偏移量来判断是否进入二楼
+            clearPredictionOffset();
+            if (mPullDownStarted && mPullDownOffset < -getStartInterceptDistance()) {
                 //手指抬起的时候，如果滑动超过了指定距离，则进入二楼，否则回退
-                if (getHeaderView().getTranslationY() >= mMinTriggerDistance) {
+                if (getHeaderView().getTranslationY() >= getMinTriggerDistance()) {
                     enterSecondFloor(ev);
                     handled = true;
                 } else {
@@ -307,74 +731,143 @@ public class SecondFloorBehavior extends CoordinatorLayout.Behavior<View> {
         return handled;
     }
 
+    private void handleActionCancel() {
+        //事件被上层拦截了，不能进入二楼，如果已经下拉了就回退，然后把CANCEL事件交给一楼，让一楼的事件序列完整
+        mActivePointerId = MotionEvent.INVALID_POINTER_ID;
+        mLastY = 0;
+        mPredictionOffsetY = 0;
+        if (mPullDownStarted && mPullDownOffset < -getStartInterceptDistance()) {
+            rollback();
+        }
+        mPullDownOffset = 0;
+        mLastMoveOffset = 0;
+        mPullDownStarted = false;
+        mDragging = false;
+        if (!isAnimationPlaying()) {
+            onStateChange(STATE_NORMAL);
+        }
+    }
+
     private boolean handleActionPointerUp(@NonNull MotionEvent ev) {
         onSecondaryPointerUp(ev);
         //已经到了拦截的距离，就继续拦截
-        return mPullDownStarted && mPullDownOffset < -mStartInterceptDistance;
+        return mPullDownStarted && mPullDownOffset < -getStartInterceptDistance();
     }
 
     private boolean handleActionMove(@NonNull MotionEvent ev) {
+        boolean trace = TraceHelper.isEnabled();
+        if (trace) {
+            TraceHelper.beginSection(TraceHelper.SECTION_HANDLE_MOVE);
+        }
+        try {
+            return handleActionMoveInternal(ev);
+        } finally {
+            if (trace) {
+                TraceHelper.endSection();
+            }
+        }
+    }
+
+    private boolean handleActionMoveInternal(@NonNull MotionEvent ev) {
         boolean handled = false;
         if (mPullDownStarted) {
             if (mActivePointerId == MotionEvent.INVALID_POINTER_ID) {
                 mActivePointerId = ev.getPointerId(ev.getActionIndex());
             }
             int actionIndex = findValidActionIndex(ev, mActivePointerId);
-            float offset = ev.getY(actionIndex) - mLastY;
-            mPullDownOffset -= offset;
-            if (mPullDownOffset > 0) {
-                //回退到下拉前
-                mPullDownStarted = false;
-                mPullDownOffset = 0;
-                mLastMoveOffset = 0;
-            } else if (mPullDownOffset < -mStartInterceptDistance) {
-                //计算出溢出的偏移量
-                float overflowOffset = -mStartInterceptDistance - mPullDownOffset;
-                if (mPullDownOffset + offset >= -mStartInterceptDistance) {
-                    //初次到达触发点，标记等下要检查是否需要插入事件
-                    mNeedCheckInsertEvent = true;
-                    //修正滑动溢出
-                    fixMoveOverflow(ev, overflowOffset);
+            mMoveTranslationY = getHeaderView().getTranslationY() - mPredictionOffsetY;
+            mMoveTranslationChanged = false;
+            //按时间顺序处理被合并到本次事件中的历史采样点，
+            //这样触发点的判断和滑动溢出的修正都会发生在准确的采样点上，而不是取决于帧率
+            int historySize = ev.getHistorySize();
+            long predictionLookahead = mConfig.getPredictionLookahead();
+            for (int pos = 0; pos <= historySize && mPullDownStarted; pos++) {
+                float y = pos < historySize ? ev.getHistoricalY(actionIndex, pos) : ev.getY(actionIndex);
+                if (predictionLookahead > 0) {
+                    mTouchPredictor.addSample(pos < historySize ? ev.getHistoricalEventTime(pos) : ev.getEventTime(), y);
                 }
-                handled = true;
-
-                float moveOffset = overflowOffset - mLastMoveOffset;
-                mLastMoveOffset = overflowOffset;
-                moveOffset *= mDampingRatio;
-
-                offsetChildren(moveOffset);
-            } else if (mPullDownOffset + offset < -mStartInterceptDistance) {
-                //初次回到触发点
-                if (ev.getPointerCount() == 1) {
-                    //计算出溢出的偏移量
-                    float overflowOffset = -mStartInterceptDistance - mPullDownOffset;
-                    mPullDownOffset += overflowOffset;
-                }
-
-                translationChildrenY(0);
-                mLastMoveOffset = 0;
-                onStateChange(STATE_DRAGGING);
+                handled = handleMoveSample(ev, pos, y);
+            }
+            //所有采样点处理完后，统一更新一次偏移
+            float predictionOffset = handled ? computePredictionOffset() : 0;
+            if (mMoveTranslationChanged || predictionOffset != mPredictionOffsetY) {
+                mPredictionOffsetY = predictionOffset;
+                translationChildrenY(mMoveTranslationY + predictionOffset);
+            }
+            if (mPredictionOffsetY != 0) {
+                mParent.removeCallbacks(mClearPredictionRunnable);
+                ViewCompat.postOnAnimationDelayed(mParent, mClearPredictionRunnable, predictionLookahead);
             }
         }
         updateLastY(ev);
         return handled;
     }
 
+    /**
+     * 处理单个采样点
+     *
+     * @param ev  原事件
+     * @param pos 采样点位置，等于{@link MotionEvent#getHistorySize()}时表示当前采样点
+     * @param y   活跃手指在该采样点的y坐标
+     * @return 是否需要拦截
+     */
+    private boolean handleMoveSample(@NonNull MotionEvent ev, int pos, float y) {
+        boolean handled = false;
+        float startInterceptDistance = getStartInterceptDistance();
+        float offset = y - mLastY;
+        mLastY = y;
+        mPullDownOffset -= offset;
+        if (mPullDownOffset > 0) {
+            //回退到下拉前
+            mPullDownStarted = false;
+            mPullDownOffset = 0;
+            mLastMoveOffset = 0;
+        } else if (mPullDownOffset < -startInterceptDistance) {
+            //计算出溢出的偏移量
+            float overflowOffset = -startInterceptDistance - mPullDownOffset;
+            if (mPullDownOffset + offset >= -startInterceptDistance) {
+                //初次到达触发点，之后一楼会暂时收不到事件，回来的时候中间层级需要重新处理
+                mTouchTargetScrolling = false;
+                //修正滑动溢出
+                fixMoveOverflow(ev, pos, overflowOffset);
+            }
+            handled = true;
+
+            float moveOffset = overflowOffset - mLastMoveOffset;
+            mLastMoveOffset = overflowOffset;
+            moveOffset *= getDampingFactor();
+
+            offsetChildren(moveOffset);
+        } else if (mPullDownOffset + offset < -startInterceptDistance) {
+            //初次回到触发点
+            if (ev.getPointerCount() == 1) {
+                //计算出溢出的偏移量
+                float overflowOffset = -startInterceptDistance - mPullDownOffset;
+                mPullDownOffset += overflowOffset;
+            }
+
+            updateMoveTranslationY(0);
+            mLastMoveOffset = 0;
+            onStateChange(STATE_DRAGGING);
+        }
+        return handled;
+    }
+
     private void offsetChildren(float offset) {
         View headerView = getHeaderView();
-        onStateChange(headerView.getTranslationY() + offset >= headerView.getHeight() / 2F ? STATE_PREPARED : STATE_DRAGGING);
+        onStateChange(mMoveTranslationY + offset >= headerView.getHeight() / 2F ? STATE_PREPARED : STATE_DRAGGING);
         //偏移的距离还没有超过HeaderView的高度
-        if (headerView.getTranslationY() + offset < headerView.getHeight()) {
-            translationChildrenYBy(offset);
+        if (mMoveTranslationY + offset < headerView.getHeight()) {
+            updateMoveTranslationY(mMoveTranslationY + offset);
 
             //防止过度往下拖动后，向上滑动时一楼底部脱离屏幕底部
-            if (headerView.getTranslationY() <= 0) {
-                mPullDownOffset -= headerView.getTranslationY() / mDampingRatio;
-                translationChildrenY(0);
+            if (mMoveTranslationY <= 0) {
+                mPullDownOffset -= mMoveTranslationY / getDampingFactor();
+                updateMoveTranslationY(0);
             }
         } else {
             //如果滑动距离已经超出了HeaderView的高度的话，就要固定在这个高度
-            float topOverflow = headerView.getTranslationY() + offset - headerView.getHeight();
+            float topOverflow = mMoveTranslationY + offset - headerView.getHeight();
 
             //不增加偏移量
             mLastMoveOffset -= topOverflow;
@@ -382,10 +875,54 @@ public class SecondFloorBehavior extends CoordinatorLayout.Behavior<View> {
 
             //修正偏移距离
             float maxTranslationY = headerView.getHeight();
-            translationChildrenY(maxTranslationY);
+            updateMoveTranslationY(maxTranslationY);
+        }
+    }
+
+    /**
+     * 计算预测的偏移量（已经过衰减）
+     * 预测值只影响显示，不会超出HeaderView的高度，也不会单靠预测就跨越触发进入二楼的距离
+     */
+    private float computePredictionOffset() {
+        long lookahead = mConfig.getPredictionLookahead();
+        if (lookahead <= 0) {
+            return 0;
+        }
+        float offset = mTouchPredictor.predictOffset(SystemClock.uptimeMillis(), lookahead) * getDampingFactor();
+        float maxOffset = mConfig.getMaxPredictionOffset();
+        if (maxOffset > 0) {
+            offset = Math.max(-maxOffset, Math.min(offset, maxOffset));
+        }
+        float target = mMoveTranslationY + offset;
+        target = Math.max(0, Math.min(target, getHeaderView().getHeight()));
+        float minTriggerDistance = getMinTriggerDistance();
+        if (mMoveTranslationY < minTriggerDistance) {
+            target = Math.min(target, minTriggerDistance);
+        } else {
+            target = Math.max(target, minTriggerDistance);
+        }
+        return target - mMoveTranslationY;
+    }
+
+    /**
+     * 去掉叠加在真实偏移量上的预测偏移量
+     */
+    private void clearPredictionOffset() {
+        mParent.removeCallbacks(mClearPredictionRunnable);
+        if (mPredictionOffsetY != 0) {
+            translationChildrenY(getHeaderView().getTranslationY() - mPredictionOffsetY);
+            mPredictionOffsetY = 0;
         }
     }
 
+    /**
+     * 更新本次MOVE事件的目标偏移量，等所有采样点处理完后再统一应用
+     */
+    private void updateMoveTranslationY(float translation) {
+        mMoveTranslationY = translation;
+        mMoveTranslationChanged = true;
+    }
+
     private void translationChildrenY(float translation) {
         View headerView = getHeaderView();
         View secondFloorView = getSecondFloorView();
@@ -394,22 +931,91 @@ public class SecondFloorBehavior extends CoordinatorLayout.Behavior<View> {
         firstFloorView.setTranslationY(translation);
         headerView.setTranslationY(translation);
         secondFloorView.setTranslationY(translation);
+
+        TraceHelper.setCounter(TraceHelper.COUNTER_HEADER_TRANSLATION, (long) translation);
+        updateScrim(translation);
     }
 
-    private void translationChildrenYBy(float translation) {
-        translationChildrenY(getHeaderView().getTranslationY() + translation);
+    /**
+     * 根据HeaderView的偏移量更新一楼遮罩和HeaderView的透明度
+     * 进度没有变化时不会做任何事情，避免无用的重绘
+     */
+    private void updateScrim(float headerTranslationY) {
+        float maxScrimOpacity = mConfig.getMaxScrimOpacity();
+        boolean headerFadeEnabled = mConfig.isHeaderFadeEnabled();
+        if (maxScrimOpacity <= 0 && !headerFadeEnabled) {
+            return;
+        }
+        View headerView = getHeaderView();
+        int headerHeight = headerView.getHeight();
+        if (headerHeight <= 0) {
+            return;
+        }
+        float progress = Math.max(0, Math.min(headerTranslationY / headerHeight, 1));
+        if (progress == mScrimProgress) {
+            return;
+        }
+        mScrimProgress = progress;
+        if (headerFadeEnabled) {
+            headerView.setAlpha(1 - progress);
+        }
+        //ViewOverlay需要Android 4.3及以上
+        if (maxScrimOpacity > 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            if (mScrimDrawable == null) {
+                View firstFloorView = getFirstFloorView();
+                mScrimDrawable = new ColorDrawable(mConfig.getScrimColor());
+                mScrimDrawable.setBounds(0, 0, firstFloorView.getWidth(), firstFloorView.getHeight());
+                firstFloorView.getOverlay().add(mScrimDrawable);
+            }
+            mScrimDrawable.setAlpha(Math.round(255 * maxScrimOpacity * progress));
+        }
     }
 
-    private void fixMoveOverflow(@NonNull MotionEvent ev, float overflowOffset) {
-        //因为超出了指定的触发点，所以要退回去，也就是减去超出的偏移量了
-        MotionEvent appendEvent = reassignEventId(ev, mLastDispatchPointerId, ev.getAction(), ev.getRawX(), ev.getRawY() - overflowOffset);
+    /**
+     * 遮罩配置变更后，按当前的偏移量重新计算
+     */
+    private void invalidateScrim() {
+        mScrimProgress = -1;
+        if (mScrimDrawable != null) {
+            mScrimDrawable.setColor(mConfig.getScrimColor());
+            mScrimDrawable.setAlpha(0);
+        }
+        if (mParent != null) {
+            if (!mConfig.isHeaderFadeEnabled()) {
+                getHeaderView().setAlpha(1);
+            }
+            updateScrim(getHeaderView().getTranslationY());
+        }
+    }
 
+    private void fixMoveOverflow(@NonNull MotionEvent ev, int pos, float overflowOffset) {
+        boolean trace = TraceHelper.isEnabled();
+        if (trace) {
+            TraceHelper.beginSection(TraceHelper.SECTION_FIX_MOVE_OVERFLOW);
+        }
+        try {
+            fixMoveOverflowInternal(ev, pos, overflowOffset);
+        } finally {
+            if (trace) {
+                TraceHelper.endSection();
+            }
+        }
+    }
+
+    private void fixMoveOverflowInternal(@NonNull MotionEvent ev, int pos, float overflowOffset) {
+        if (mDispatchedPointerIdBits == 0) {
+            return;
+        }
+        int pointerIdBits = getPointerIdBits(ev);
+        syncDispatchedPointers(ev, pointerIdBits);
         int pi = findValidActionIndex(ev, mLastDispatchPointerId);
-        appendEvent.offsetLocation(ev.getX(pi) - ev.getRawX(), ev.getY(pi) - ev.getRawY());
+        boolean historical = pos < ev.getHistorySize();
+        mLastDispatchY = historical ? ev.getHistoricalY(pi, pos) : ev.getY(pi);
+        mLastDispatchX = historical ? ev.getHistoricalX(pi, pos) : ev.getX(pi);
 
-        mLastDispatchY = ev.getY(pi);
-        mLastDispatchX = ev.getX(pi);
-        getFirstFloorView().dispatchTouchEvent(appendEvent);
+        //因为超出了指定的触发点，所以要退回去，也就是每根手指都减去超出的偏移量
+        MotionEvent appendEvent = obtainPointerEvent(ev, pos, pointerIdBits, MotionEvent.ACTION_MOVE, -1, -overflowOffset);
+        dispatchToFirstFloor(appendEvent);
         appendEvent.recycle();
     }
 
@@ -421,12 +1027,17 @@ public class SecondFloorBehavior extends CoordinatorLayout.Behavior<View> {
     private void handleActionDown(@NonNull MotionEvent ev) {
         mActivePointerId = ev.getPointerId(0);
         //有手指按下的时候，如果还没触发二楼的下拉，就更新id
-        if (mPullDownOffset >= -mStartInterceptDistance) {
+        if (mPullDownOffset >= -getStartInterceptDistance()) {
             mLastDispatchPointerId = mActivePointerId;
         }
         mDragging = true;
         mPullDownOffset = 0;
         mLastMoveOffset = 0;
+        mPredictionOffsetY = 0;
+        mTouchPredictor.clear();
+        mTouchTarget = null;
+        mTouchTargetScrolling = false;
+        mDisallowInterceptRequested = false;
         updateLastY(ev);
         onStateChange(STATE_DRAGGING);
     }
@@ -434,11 +1045,13 @@ public class SecondFloorBehavior extends CoordinatorLayout.Behavior<View> {
     private boolean handleActionPointerDown(@NonNull MotionEvent ev) {
         mActivePointerId = ev.getPointerId(ev.getActionIndex());
         //有手指按下的时候，如果还没触发二楼的下拉，就更新id
-        if (mPullDownOffset >= -mStartInterceptDistance) {
+        if (mPullDownOffset >= -getStartInterceptDistance()) {
             mLastDispatchPointerId = mActivePointerId;
         }
+        //换了手指，之前的采样点已经不连续了
+        mTouchPredictor.clear();
         updateLastY(ev);
-        return mPullDownStarted && mPullDownOffset < -mStartInterceptDistance;
+        return mPullDownStarted && mPullDownOffset < -getStartInterceptDistance();
     }
 
     private void updateLastY(MotionEvent ev) {
@@ -462,23 +1075,30 @@ public class SecondFloorBehavior extends CoordinatorLayout.Behavior<View> {
     private void gotoSecondFloor(final MotionEvent ev, final boolean fakeScroll) {
         if (mOnBeforeEnterSecondFloorListener == null || mOnBeforeEnterSecondFloorListener.onBeforeEnterSecondFloor()) {
             onStateChange(STATE_OPENING);
+            //动画结束时原事件已经被回收了，要先复制一份
+            final MotionEvent fakeScrollEvent = fakeScroll && ev != null ? MotionEvent.obtain(ev) : null;
 
             final View headerView = getHeaderView();
             final View secondFloorView = getSecondFloorView();
             final View firstFloorView = getFirstFloorView();
+            long duration = mConfig.getEnterDuration();
+            Interpolator interpolator = mConfig.getEnterAnimationInterpolator();
 
-            smoothTranslationBy(headerView, firstFloorView.getHeight(), mEnterDuration, mEnterAnimationInterpolator, new AnimatorListenerAdapter() {
+            smoothTranslationBy(headerView, firstFloorView.getHeight(), duration, interpolator, new AnimatorListenerAdapter() {
                 @Override
                 public void onAnimationEnd(Animator animation) {
                     onStateChange(STATE_OPENED);
-                    if (fakeScroll) {
-                        fakeScroll(firstFloorView, -mStartInterceptDistance, ev);
+                    if (fakeScrollEvent != null) {
+                        fakeScroll(-getStartInterceptDistance(), fakeScrollEvent);
+                        fakeScrollEvent.recycle();
                     }
                 }
             });
-            smoothTranslationBy(secondFloorView, firstFloorView.getHeight() + headerView.getHeight(), mEnterDuration, mEnterAnimationInterpolator, null);
-            smoothTranslationBy(firstFloorView, firstFloorView.getHeight(), mEnterDuration / 2, mEnterAnimationInterpolator, null);
+            smoothTranslationBy(secondFloorView, firstFloorView.getHeight() + headerView.getHeight(), duration, interpolator, null);
+            smoothTranslationBy(firstFloorView, firstFloorView.getHeight(), duration / 2, interpolator, null);
 
+            //动画要到下一帧才真正开始，Android 7.0及以上的ValueAnimator在第一帧才确定开始时间，
+            //所以回调里的耗时操作只会推迟动画的开始，不会让动画跳帧
             if (mOnEnterSecondFloorListener != null) {
                 mOnEnterSecondFloorListener.onEnterSecondFloor();
             }
@@ -495,10 +1115,23 @@ public class SecondFloorBehavior extends CoordinatorLayout.Behavior<View> {
         if (interpolator != null) {
             animator.setInterpolator(interpolator);
         }
+        final boolean isHeaderView = target == getHeaderView();
         animator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
             @Override
             public void onAnimationUpdate(ValueAnimator animation) {
-                target.setTranslationY((Float) animation.getAnimatedValue());
+                boolean trace = TraceHelper.isEnabled();
+                if (trace) {
+                    TraceHelper.beginSection(TraceHelper.SECTION_ANIMATION_FRAME);
+                }
+                float translation = (Float) animation.getAnimatedValue();
+                target.setTranslationY(translation);
+                if (isHeaderView) {
+                    TraceHelper.setCounter(TraceHelper.COUNTER_HEADER_TRANSLATION, (long) translation);
+                    updateScrim(translation);
+                }
+                if (trace) {
+                    TraceHelper.endSection();
+                }
             }
         });
         if (listener != null) {
@@ -512,14 +1145,22 @@ public class SecondFloorBehavior extends CoordinatorLayout.Behavior<View> {
             return;
         }
 
+        long duration = mConfig.getRollbackDuration();
         ValueAnimator animator = ValueAnimator.ofFloat(getHeaderView().getTranslationY(), 0);
         animator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
             @Override
             public void onAnimationUpdate(ValueAnimator animation) {
+                boolean trace = TraceHelper.isEnabled();
+                if (trace) {
+                    TraceHelper.beginSection(TraceHelper.SECTION_ANIMATION_FRAME);
+                }
                 translationChildrenY((float) animation.getAnimatedValue());
+                if (trace) {
+                    TraceHelper.endSection();
+                }
             }
         });
-        animator.setDuration(mRollbackDuration);
+        animator.setDuration(duration);
         animator.start();
     }
 
@@ -530,12 +1171,20 @@ public class SecondFloorBehavior extends CoordinatorLayout.Behavior<View> {
         if (pointerId == mActivePointerId) {
             //另选一根手指，并把它标记为活跃
             int newPointerIndex = pointerIndex == 0 ? 1 : 0;
+            if (newPointerIndex >= ev.getPointerCount()) {
+                //没有其他手指了（不完整的事件序列）
+                mActivePointerId = MotionEvent.INVALID_POINTER_ID;
+                mLastY = 0;
+                mTouchPredictor.clear();
+                return;
+            }
             mActivePointerId = ev.getPointerId(newPointerIndex);
             //还没有触发二楼下拉，就更新id
-            if (mPullDownOffset >= -mStartInterceptDistance) {
+            if (mPullDownOffset >= -getStartInterceptDistance()) {
                 mLastDispatchPointerId = mActivePointerId;
             }
             mLastY = ev.getY(newPointerIndex);
+            mTouchPredictor.clear();
         }
     }
 
@@ -549,11 +1198,29 @@ public class SecondFloorBehavior extends CoordinatorLayout.Behavior<View> {
     @Override
     public boolean onStartNestedScroll(@NonNull CoordinatorLayout coordinatorLayout, @NonNull View child, @NonNull View directTargetChild, @NonNull View target, int axes, int type) {
         //只需要监听一楼的滚动
-        return directTargetChild == coordinatorLayout.getChildAt(2);
+        boolean accepted = directTargetChild == coordinatorLayout.getChildAt(2);
+        if (accepted && type == ViewCompat.TYPE_TOUCH) {
+            //记住接受了本次手势的子View，后面的MOVE事件可以直接分发给它
+            mTouchTarget = target;
+            mTouchTargetScrolling = false;
+        }
+        return accepted;
+    }
+
+    @Override
+    public void onStopNestedScroll(@NonNull CoordinatorLayout coordinatorLayout, @NonNull View child, @NonNull View target, int type) {
+        if (target == mTouchTarget && type == ViewCompat.TYPE_TOUCH) {
+            mTouchTarget = null;
+            mTouchTargetScrolling = false;
+        }
     }
 
     @Override
     public void onNestedScroll(@NonNull CoordinatorLayout coordinatorLayout, @NonNull View child, @NonNull View target, int dxConsumed, int dyConsumed, int dxUnconsumed, int dyUnconsumed, int type) {
+        //下拉时到顶的列表不会消费滑动距离，也不会禁止父View拦截事件，这时候中间层级（比如下拉刷新控件）仍然需要收到MOVE事件
+        if (target == mTouchTarget && type == ViewCompat.TYPE_TOUCH && dyConsumed != 0) {
+            mTouchTargetScrolling = true;
+        }
         if (dyUnconsumed < 0 && mDragging && !mPullDownStarted && mPullDownOffset >= 0) {
             mPullDownStarted = true;
             mPullDownOffset = dyUnconsumed;
@@ -574,22 +1241,30 @@ public class SecondFloorBehavior extends CoordinatorLayout.Behavior<View> {
 
     private boolean mLayoutChangeListenerAdded;
     private View.OnLayoutChangeListener mOnLayoutChangeListener = new View.OnLayoutChangeListener() {
-        @SuppressWarnings("ConstantConditions")
         @Override
         public void onLayoutChange(View v, int left, int top, int right, int bottom, int oldLeft, int oldTop, int oldRight, int oldBottom) {
+            boolean trace = TraceHelper.isEnabled();
+            if (trace) {
+                TraceHelper.beginSection(TraceHelper.SECTION_LAYOUT_CHANGE);
+            }
+            try {
+                layoutChildren(v);
+            } finally {
+                if (trace) {
+                    TraceHelper.endSection();
+                }
+            }
+        }
 
+        @SuppressWarnings("ConstantConditions")
+        private void layoutChildren(View v) {
             View headerView = getHeaderView();
             View secondFloorView = getSecondFloorView();
             View firstFloorView = getFirstFloorView();
 
             if (!v.isInEditMode() && headerView.getHeight() > 0) {
-                //滑动偏移量没有指定的话，就给一个默认的
-                if (mMinTriggerDistance == 0) {
-                    mMinTriggerDistance = headerView.getHeight() / 2;
-                }
-                if (mStartInterceptDistance == 0) {
-                    mStartInterceptDistance = headerView.getHeight();
-                }
+                //滑动偏移量没有指定的话，就根据HeaderView的高度给一个默认的
+                mHeaderHeight = headerView.getHeight();
             }
             if (v.isInEditMode()) {
                 //布局预览中允许为null
@@ -603,6 +1278,9 @@ public class SecondFloorBehavior extends CoordinatorLayout.Behavior<View> {
                     secondFloorView.layout(secondFloorView.getLeft(), secondFloorTop, secondFloorView.getRight(), headerTop);
                 }
             } else {
+                if (mScrimDrawable != null) {
+                    mScrimDrawable.setBounds(0, 0, firstFloorView.getWidth(), firstFloorView.getHeight());
+                }
                 //HeaderVIew放在一楼的顶部
                 int headerBottom = firstFloorView.getTop();
                 int headerTop = headerBottom - headerView.getHeight();
@@ -614,7 +1292,29 @@ public class SecondFloorBehavior extends CoordinatorLayout.Behavior<View> {
         }
     };
 
-    private void fakeScroll(View target, float verticalScrollBy, MotionEvent originEvent) {
+    private void fakeScroll(float verticalScrollBy, MotionEvent originEvent) {
+        boolean trace = TraceHelper.isEnabled();
+        if (trace) {
+            TraceHelper.beginSection(TraceHelper.SECTION_FAKE_SCROLL);
+        }
+        try {
+            fakeScrollInternal(verticalScrollBy, originEvent);
+        } finally {
+            if (trace) {
+                TraceHelper.endSection();
+            }
+        }
+    }
+
+    private void fakeScrollInternal(float verticalScrollBy, MotionEvent originEvent) {
+        if (mDispatchedPointerIdBits == 0) {
+            //一楼的事件序列已经结束了
+            return;
+        }
+        //只保留一根手指来模拟滑动，优先使用最后分发的手指
+        int pointerId = mLastDispatchPointerId != MotionEvent.INVALID_POINTER_ID && (mDispatchedPointerIdBits & (1 << mLastDispatchPointerId)) != 0
+                ? mLastDispatchPointerId : Integer.numberOfTrailingZeros(mDispatchedPointerIdBits);
+        syncDispatchedPointers(originEvent, 1 << pointerId);
 
         float startX = originEvent.getRawX();
         //noinspection UnnecessaryLocalVariable
@@ -622,17 +1322,17 @@ public class SecondFloorBehavior extends CoordinatorLayout.Behavior<View> {
         float startY = originEvent.getRawY();
         float endY = startY + verticalScrollBy;
 
-        MotionEvent event = reassignEventId(originEvent, mLastDispatchPointerId, MotionEvent.ACTION_MOVE, endX, endY);
+        MotionEvent event = reassignEventId(originEvent, pointerId, MotionEvent.ACTION_MOVE, endX, endY);
 
         float offsetX = mLastDispatchX - startX;
         float offsetY = mLastDispatchY - startY;
 
         event.offsetLocation(offsetX, offsetY);
 
-        target.dispatchTouchEvent(event);
+        dispatchToFirstFloor(event);
 
         event.setAction(MotionEvent.ACTION_UP);
-        target.dispatchTouchEvent(event);
+        dispatchToFirstFloor(event);
 
         event.recycle();
     }
@@ -640,6 +1340,7 @@ public class SecondFloorBehavior extends CoordinatorLayout.Behavior<View> {
     private void onStateChange(int newState) {
         if (mState != newState) {
             mState = newState;
+            TraceHelper.setCounter(TraceHelper.COUNTER_STATE, newState);
             if (mOnStateChangeListener != null) {
                 mOnStateChangeListener.onStateChange(newState);
             }
@@ -724,65 +1425,200 @@ public class SecondFloorBehavior extends CoordinatorLayout.Behavior<View> {
     }
 
     public void setExitAnimationInterpolator(Interpolator interpolator) {
-        mExitAnimationInterpolator = interpolator;
+        mConfig = mConfig.newBuilder().setExitAnimationInterpolator(interpolator).build();
     }
 
     public void setEnterAnimationInterpolator(Interpolator interpolator) {
-        mEnterAnimationInterpolator = interpolator;
+        mConfig = mConfig.newBuilder().setEnterAnimationInterpolator(interpolator).build();
     }
 
+    /**
+     * @return 开始拦截下拉的滑动距离，没有指定的话为HeaderView的高度
+     */
     public float getStartInterceptDistance() {
-        return mStartInterceptDistance;
+        float distance = mConfig.getStartInterceptDistance();
+        return distance == 0 ? mHeaderHeight : distance;
     }
 
     public void setStartInterceptDistance(float distance) {
-        mStartInterceptDistance = distance;
+        mConfig = mConfig.newBuilder().setStartInterceptDistance(distance).build();
     }
 
+    /**
+     * @return 能够进入二楼的滑动距离，没有指定的话为HeaderView高度的一半
+     */
     public float getMinTriggerDistance() {
-        return mMinTriggerDistance;
+        float distance = mConfig.getMinTriggerDistance();
+        return distance == 0 ? mHeaderHeight / 2 : distance;
     }
 
     public void setMinTriggerDistance(float distance) {
-        mMinTriggerDistance = distance;
+        mConfig = mConfig.newBuilder().setMinTriggerDistance(distance).build();
     }
 
+    /**
+     * @return 滑动距离衰减率，跟布局属性layout_dampingRatio的含义一样，0: 无衰减
+     */
     public float getDampingRatio() {
-        return mDampingRatio;
+        return mConfig.getDampingRatio();
     }
 
+    /**
+     * 设置触发下拉后的滑动距离衰减率，跟布局属性layout_dampingRatio的含义一样
+     *
+     * @param ratio 取值范围: 0~1，0: 无衰减，0.5: 衰减一半
+     */
     public void setDampingRatio(float ratio) {
-        mDampingRatio = ratio;
+        mConfig = mConfig.newBuilder().setDampingRatio(ratio).build();
+    }
+
+    /**
+     * @return 手指滑动距离换算成偏移量时要乘上的系数
+     */
+    private float getDampingFactor() {
+        return 1F - mConfig.getDampingRatio();
     }
 
     public long getRollbackDuration() {
-        return mRollbackDuration;
+        return mConfig.getRollbackDuration();
     }
 
     public void setRollbackDuration(long duration) {
-        mRollbackDuration = duration;
+        mConfig = mConfig.newBuilder().setRollbackDuration(duration).build();
     }
 
     public long getEnterDuration() {
-        return mEnterDuration;
+        return mConfig.getEnterDuration();
     }
 
     public void setEnterDuration(long duration) {
-        mEnterDuration = duration;
+        mConfig = mConfig.newBuilder().setEnterDuration(duration).build();
     }
 
     public long getExitDuration() {
-        return mExitDuration;
+        return mConfig.getExitDuration();
     }
 
     public void setExitDuration(long duration) {
-        mExitDuration = duration;
+        mConfig = mConfig.newBuilder().setExitDuration(duration).build();
+    }
+
+    /**
+     * @return 当前生效的配置（包括通过setter修改过的值）
+     */
+    @NonNull
+    public SecondFloorConfig getConfig() {
+        return mConfig;
+    }
+
+    public int getScrimColor() {
+        return mConfig.getScrimColor();
+    }
+
+    /**
+     * 设置一楼遮罩的颜色
+     */
+    public void setScrimColor(int color) {
+        mConfig = mConfig.newBuilder().setScrimColor(color).build();
+        invalidateScrim();
+    }
+
+    public float getMaxScrimOpacity() {
+        return mConfig.getMaxScrimOpacity();
+    }
+
+    /**
+     * 设置一楼遮罩的最大不透明度，遮罩的不透明度会随着下拉的进度从0渐变到这个值
+     *
+     * @param opacity 取值范围: 0~1，0: 不显示遮罩
+     */
+    public void setMaxScrimOpacity(float opacity) {
+        mConfig = mConfig.newBuilder().setMaxScrimOpacity(opacity).build();
+        invalidateScrim();
+    }
+
+    public boolean isHeaderFadeEnabled() {
+        return mConfig.isHeaderFadeEnabled();
+    }
+
+    /**
+     * 设置下拉时是否淡出HeaderView
+     */
+    public void setHeaderFadeEnabled(boolean enabled) {
+        mConfig = mConfig.newBuilder().setHeaderFadeEnabled(enabled).build();
+        invalidateScrim();
+    }
+
+    public boolean isDirectDispatchEnabled() {
+        return mConfig.isDirectDispatchEnabled();
+    }
+
+    /**
+     * 设置是否跳过一楼的中间层级，把MOVE事件直接分发给正在滚动的子View
+     * 只有在该子View自己消费了滑动距离，并且禁止了父View拦截事件之后才会直接分发，其他情况仍然走完整的分发流程；
+     * 注意：开启后，中间层级重写的dispatchTouchEvent方法不会再收到这些MOVE事件
+     */
+    public void setDirectDispatchEnabled(boolean enabled) {
+        mConfig = mConfig.newBuilder().setDirectDispatchEnabled(enabled).build();
+    }
+
+    public boolean isAxisLockEnabled() {
+        return mConfig.isAxisLockEnabled();
+    }
+
+    /**
+     * 设置是否先判断手势方向，只在可能触发二楼下拉时才拦截事件
+     * 开启后，横向滑动、往上滑动以及按下时一楼还没有滑动到顶部的手势都不会被拦截，直接由一楼自己处理；
+     * 往下拉的手势会在超过TouchSlop后才开始拦截
+     */
+    public void setAxisLockEnabled(boolean enabled) {
+        mConfig = mConfig.newBuilder().setAxisLockEnabled(enabled).build();
+    }
+
+    public long getPredictionLookahead() {
+        return mConfig.getPredictionLookahead();
+    }
+
+    /**
+     * 设置拖动时最多往后预测多长时间的手指位置，用来减少拖动时View跟手的延迟
+     *
+     * @param lookahead 毫秒，0: 不预测
+     */
+    public void setPredictionLookahead(long lookahead) {
+        mConfig = mConfig.newBuilder().setPredictionLookahead(lookahead).build();
+        if (lookahead <= 0) {
+            mTouchPredictor.clear();
+        }
+    }
+
+    public float getMaxPredictionOffset() {
+        return mConfig.getMaxPredictionOffset();
+    }
+
+    /**
+     * 设置预测出来的偏移量最大值
+     *
+     * @param offset 0: 不限制（仍然不会超出HeaderView的高度）
+     */
+    public void setMaxPredictionOffset(float offset) {
+        mConfig = mConfig.newBuilder().setMaxPredictionOffset(offset).build();
     }
 
     public int getState() {
         return mState;
     }
 
+    /**
+     * 开启或关闭Systrace/Perfetto埋点（全局生效，默认关闭）
+     * 开启后会在触摸事件处理、事件分发、布局和动画帧等关键路径上输出Trace Section，
+     * 并通过Trace Counter输出当前状态和HeaderView的偏移量（Counter需要Android 10及以上）
+     *
+     * @param enabled 是否开启
+     */
+    public static void setTraceEnabled(boolean enabled) {
+        TraceHelper.setEnabled(enabled);
+    }
+
     /**
      * 参考自 {@link View.DeclaredOnClickListener}
      */
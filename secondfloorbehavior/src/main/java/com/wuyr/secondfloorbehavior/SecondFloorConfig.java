@@ -0,0 +1,351 @@
+package com.wuyr.secondfloorbehavior;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Color;
+import android.view.animation.Interpolator;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.StyleRes;
+
+/**
+ * {@link SecondFloorBehavior}的不可变配置，可以被多个Behavior共享
+ * 通过{@link Builder}或者{@link #fromStyle(Context, int)}创建一次，然后传给{@link SecondFloorBehavior#SecondFloorBehavior(SecondFloorConfig)}
+ *
+ * @since 2026-10-18 下午11:30
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class SecondFloorConfig {
+
+    /**
+     * 默认配置
+     */
+    public static final SecondFloorConfig DEFAULT = new Builder().build();
+
+    //布局中可以设置的所有属性，一个都没有设置的话直接使用默认配置
+    private static final int[] ATTRS = {
+            R.styleable.CoordinatorLayout_Layout_layout_startInterceptDistance,
+            R.styleable.CoordinatorLayout_Layout_layout_minTriggerOffset,
+            R.styleable.CoordinatorLayout_Layout_layout_dampingRatio,
+            R.styleable.CoordinatorLayout_Layout_layout_rollbackDuration,
+            R.styleable.CoordinatorLayout_Layout_layout_enterDuration,
+            R.styleable.CoordinatorLayout_Layout_layout_exitDuration,
+            R.styleable.CoordinatorLayout_Layout_layout_predictionLookahead,
+            R.styleable.CoordinatorLayout_Layout_layout_maxPredictionOffset,
+            R.styleable.CoordinatorLayout_Layout_layout_directDispatchEnabled,
+            R.styleable.CoordinatorLayout_Layout_layout_scrimColor,
+            R.styleable.CoordinatorLayout_Layout_layout_maxScrimOpacity,
+            R.styleable.CoordinatorLayout_Layout_layout_headerFadeEnabled,
+            R.styleable.CoordinatorLayout_Layout_layout_axisLockEnabled
+    };
+
+    private final float mStartInterceptDistance;
+    private final float mMinTriggerDistance;
+    private final float mDampingRatio;
+    private final long mRollbackDuration;
+    private final long mEnterDuration;
+    private final long mExitDuration;
+    private final long mPredictionLookahead;
+    private final float mMaxPredictionOffset;
+    private final boolean mDirectDispatchEnabled;
+    private final int mScrimColor;
+    private final float mMaxScrimOpacity;
+    private final boolean mHeaderFadeEnabled;
+    private final boolean mAxisLockEnabled;
+    private final Interpolator mEnterAnimationInterpolator;
+    private final Interpolator mExitAnimationInterpolator;
+
+    private SecondFloorConfig(Builder builder) {
+        mStartInterceptDistance = builder.mStartInterceptDistance;
+        mMinTriggerDistance = builder.mMinTriggerDistance;
+        mDampingRatio = builder.mDampingRatio;
+        mRollbackDuration = builder.mRollbackDuration;
+        mEnterDuration = builder.mEnterDuration;
+        mExitDuration = builder.mExitDuration;
+        mPredictionLookahead = builder.mPredictionLookahead;
+        mMaxPredictionOffset = builder.mMaxPredictionOffset;
+        mDirectDispatchEnabled = builder.mDirectDispatchEnabled;
+        mScrimColor = builder.mScrimColor;
+        mMaxScrimOpacity = builder.mMaxScrimOpacity;
+        mHeaderFadeEnabled = builder.mHeaderFadeEnabled;
+        mAxisLockEnabled = builder.mAxisLockEnabled;
+        mEnterAnimationInterpolator = builder.mEnterAnimationInterpolator;
+        mExitAnimationInterpolator = builder.mExitAnimationInterpolator;
+    }
+
+    /**
+     * 直接从TypedArray中读取，默认值和取值范围同{@link Builder}
+     */
+    private SecondFloorConfig(TypedArray a) {
+        mStartInterceptDistance = a.getDimensionPixelSize(R.styleable.CoordinatorLayout_Layout_layout_startInterceptDistance, 0);
+        mMinTriggerDistance = a.getDimensionPixelSize(R.styleable.CoordinatorLayout_Layout_layout_minTriggerOffset, 0);
+        mDampingRatio = clamp(a.getFloat(R.styleable.CoordinatorLayout_Layout_layout_dampingRatio, 0));
+        mRollbackDuration = a.getInt(R.styleable.CoordinatorLayout_Layout_layout_rollbackDuration, 200);
+        mEnterDuration = a.getInt(R.styleable.CoordinatorLayout_Layout_layout_enterDuration, 500);
+        mExitDuration = a.getInt(R.styleable.CoordinatorLayout_Layout_layout_exitDuration, 400);
+        mPredictionLookahead = a.getInt(R.styleable.CoordinatorLayout_Layout_layout_predictionLookahead, 0);
+        mMaxPredictionOffset = a.getDimensionPixelSize(R.styleable.CoordinatorLayout_Layout_layout_maxPredictionOffset, 0);
+        mDirectDispatchEnabled = a.getBoolean(R.styleable.CoordinatorLayout_Layout_layout_directDispatchEnabled, false);
+        mScrimColor = a.getColor(R.styleable.CoordinatorLayout_Layout_layout_scrimColor, Color.BLACK);
+        mMaxScrimOpacity = clamp(a.getFloat(R.styleable.CoordinatorLayout_Layout_layout_maxScrimOpacity, 0));
+        mHeaderFadeEnabled = a.getBoolean(R.styleable.CoordinatorLayout_Layout_layout_headerFadeEnabled, false);
+        mAxisLockEnabled = a.getBoolean(R.styleable.CoordinatorLayout_Layout_layout_axisLockEnabled, false);
+        mEnterAnimationInterpolator = null;
+        mExitAnimationInterpolator = null;
+    }
+
+    private static float clamp(float value) {
+        return Math.max(0, Math.min(value, 1));
+    }
+
+    /**
+     * 从style资源中读取配置，属性同布局中的layout_xxx属性
+     *
+     * @param context  上下文
+     * @param styleRes style资源id
+     */
+    @NonNull
+    public static SecondFloorConfig fromStyle(@NonNull Context context, @StyleRes int styleRes) {
+        TypedArray a = context.obtainStyledAttributes(styleRes, R.styleable.CoordinatorLayout_Layout);
+        SecondFloorConfig config = fromTypedArray(a);
+        a.recycle();
+        return config;
+    }
+
+    /**
+     * 布局中没有设置任何属性时返回{@link #DEFAULT}，避免每个Behavior都创建一份相同的配置
+     */
+    @NonNull
+    static SecondFloorConfig fromTypedArray(@NonNull TypedArray a) {
+        for (int attr : ATTRS) {
+            if (a.hasValue(attr)) {
+                return new SecondFloorConfig(a);
+            }
+        }
+        return DEFAULT;
+    }
+
+    /**
+     * 基于当前配置创建Builder，用来派生出新的配置
+     */
+    @NonNull
+    public Builder newBuilder() {
+        return new Builder(this);
+    }
+
+    public float getStartInterceptDistance() {
+        return mStartInterceptDistance;
+    }
+
+    public float getMinTriggerDistance() {
+        return mMinTriggerDistance;
+    }
+
+    /**
+     * @return 滑动距离衰减率，取值范围: 0~1，0: 无衰减
+     */
+    public float getDampingRatio() {
+        return mDampingRatio;
+    }
+
+    public long getRollbackDuration() {
+        return mRollbackDuration;
+    }
+
+    public long getEnterDuration() {
+        return mEnterDuration;
+    }
+
+    public long getExitDuration() {
+        return mExitDuration;
+    }
+
+    public long getPredictionLookahead() {
+        return mPredictionLookahead;
+    }
+
+    public float getMaxPredictionOffset() {
+        return mMaxPredictionOffset;
+    }
+
+    public boolean isDirectDispatchEnabled() {
+        return mDirectDispatchEnabled;
+    }
+
+    public int getScrimColor() {
+        return mScrimColor;
+    }
+
+    public float getMaxScrimOpacity() {
+        return mMaxScrimOpacity;
+    }
+
+    public boolean isHeaderFadeEnabled() {
+        return mHeaderFadeEnabled;
+    }
+
+    public boolean isAxisLockEnabled() {
+        return mAxisLockEnabled;
+    }
+
+    @Nullable
+    public Interpolator getEnterAnimationInterpolator() {
+        return mEnterAnimationInterpolator;
+    }
+
+    @Nullable
+    public Interpolator getExitAnimationInterpolator() {
+        return mExitAnimationInterpolator;
+    }
+
+    public static final class Builder {
+
+        private float mStartInterceptDistance;
+        private float mMinTriggerDistance;
+        private float mDampingRatio;
+        private long mRollbackDuration = 200;
+        private long mEnterDuration = 500;
+        private long mExitDuration = 400;
+        private long mPredictionLookahead;
+        private float mMaxPredictionOffset;
+        private boolean mDirectDispatchEnabled;
+        private int mScrimColor = Color.BLACK;
+        private float mMaxScrimOpacity;
+        private boolean mHeaderFadeEnabled;
+        private boolean mAxisLockEnabled;
+        private Interpolator mEnterAnimationInterpolator;
+        private Interpolator mExitAnimationInterpolator;
+
+        public Builder() {
+        }
+
+        private Builder(SecondFloorConfig config) {
+            mStartInterceptDistance = config.mStartInterceptDistance;
+            mMinTriggerDistance = config.mMinTriggerDistance;
+            mDampingRatio = config.mDampingRatio;
+            mRollbackDuration = config.mRollbackDuration;
+            mEnterDuration = config.mEnterDuration;
+            mExitDuration = config.mExitDuration;
+            mPredictionLookahead = config.mPredictionLookahead;
+            mMaxPredictionOffset = config.mMaxPredictionOffset;
+            mDirectDispatchEnabled = config.mDirectDispatchEnabled;
+            mScrimColor = config.mScrimColor;
+            mMaxScrimOpacity = config.mMaxScrimOpacity;
+            mHeaderFadeEnabled = config.mHeaderFadeEnabled;
+            mAxisLockEnabled = config.mAxisLockEnabled;
+            mEnterAnimationInterpolator = config.mEnterAnimationInterpolator;
+            mExitAnimationInterpolator = config.mExitAnimationInterpolator;
+        }
+
+        /**
+         * 开始拦截下拉的滑动距离（像素），0: HeaderView的高度
+         */
+        public Builder setStartInterceptDistance(float distance) {
+            mStartInterceptDistance = distance;
+            return this;
+        }
+
+        /**
+         * 能够进入二楼的滑动距离（像素），0: HeaderView高度的一半
+         */
+        public Builder setMinTriggerDistance(float distance) {
+            mMinTriggerDistance = distance;
+            return this;
+        }
+
+        /**
+         * 触发下拉后的滑动距离衰减率，取值范围: 0~1，0: 无衰减
+         */
+        public Builder setDampingRatio(float ratio) {
+            mDampingRatio = clamp(ratio);
+            return this;
+        }
+
+        public Builder setRollbackDuration(long duration) {
+            mRollbackDuration = duration;
+            return this;
+        }
+
+        public Builder setEnterDuration(long duration) {
+            mEnterDuration = duration;
+            return this;
+        }
+
+        public Builder setExitDuration(long duration) {
+            mExitDuration = duration;
+            return this;
+        }
+
+        /**
+         * 拖动时最多往后预测多长时间的手指位置（毫秒），0: 不预测
+         */
+        public Builder setPredictionLookahead(long lookahead) {
+            mPredictionLookahead = lookahead;
+            return this;
+        }
+
+        /**
+         * 预测出来的偏移量最大值（像素），0: 不限制
+         */
+        public Builder setMaxPredictionOffset(float offset) {
+            mMaxPredictionOffset = offset;
+            return this;
+        }
+
+        /**
+         * 是否把MOVE事件直接分发给一楼中正在滚动的子View，见{@link SecondFloorBehavior#setDirectDispatchEnabled(boolean)}
+         */
+        public Builder setDirectDispatchEnabled(boolean enabled) {
+            mDirectDispatchEnabled = enabled;
+            return this;
+        }
+
+        public Builder setScrimColor(int color) {
+            mScrimColor = color;
+            return this;
+        }
+
+        /**
+         * 一楼遮罩的最大不透明度，取值范围: 0~1，0: 不显示遮罩
+         */
+        public Builder setMaxScrimOpacity(float opacity) {
+            mMaxScrimOpacity = clamp(opacity);
+            return this;
+        }
+
+        public Builder setHeaderFadeEnabled(boolean enabled) {
+            mHeaderFadeEnabled = enabled;
+            return this;
+        }
+
+        /**
+         * 是否先判断手势方向，只在可能触发二楼下拉时才拦截事件，见{@link SecondFloorBehavior#setAxisLockEnabled(boolean)}
+         */
+        public Builder setAxisLockEnabled(boolean enabled) {
+            mAxisLockEnabled = enabled;
+            return this;
+        }
+
+        /**
+         * 注意：配置会被多个Behavior共享，插值器需要是无状态的
+         */
+        public Builder setEnterAnimationInterpolator(@Nullable Interpolator interpolator) {
+            mEnterAnimationInterpolator = interpolator;
+            return this;
+        }
+
+        /**
+         * 注意：配置会被多个Behavior共享，插值器需要是无状态的
+         */
+        public Builder setExitAnimationInterpolator(@Nullable Interpolator interpolator) {
+            mExitAnimationInterpolator = interpolator;
+            return this;
+        }
+
+        @NonNull
+        public SecondFloorConfig build() {
+            return new SecondFloorConfig(this);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.wuyr.secondfloorbehavior;
+
+/**
+ * 触摸位置预测
+ * 根据最近的采样点和事件时间戳，用最小二乘法拟合出手指速度，再推算出一段时间后的手指位置
+ * 采样点保存在固定大小的环形数组中，添加采样点和预测都不会产生额外的对象分配
+ *
+ * @since 2026-10-18 下午10:20
+ */
+final class TouchPredictor {
+
+    /**
+     * 最多保留的采样点数量
+     */
+    private static final int MAX_SAMPLES = 8;
+
+    /**
+     * 只使用最近这段时间内的采样点来拟合速度（毫秒）
+     */
+    private static final long SAMPLE_WINDOW = 50;
+
+    /**
+     * 预估的一帧时长（毫秒），事件从产生到显示出来至少要经过一帧
+     */
+    private static final long FRAME_INTERVAL = 16;
+
+    private final long[] mTimes = new long[MAX_SAMPLES];
+    private final float[] mPositions = new float[MAX_SAMPLES];
+
+    private int mIndex;
+    private int mCount;
+
+    void clear() {
+        mCount = 0;
+    }
+
+    void addSample(long time, float position) {
+        //时间戳倒退了，说明是新的事件序列，之前的采样点已经无效
+        if (mCount > 0 && time < mTimes[mIndex]) {
+            mCount = 0;
+        }
+        mIndex = (mIndex + 1) % MAX_SAMPLES;
+        mTimes[mIndex] = time;
+        mPositions[mIndex] = position;
+        if (mCount < MAX_SAMPLES) {
+            mCount++;
+        }
+    }
+
+    /**
+     * 预测手指在预计显示时间的位置相对于最后一个采样点的偏移量
+     *
+     * @param now          当前时间（{@link android.os.SystemClock#uptimeMillis()}）
+     * @param maxLookahead 最多往后预测多长时间（毫秒）
+     * @return 预测的偏移量，没有足够的采样点时返回0
+     */
+    float predictOffset(long now, long maxLookahead) {
+        if (mCount < 2 || maxLookahead <= 0) {
+            return 0;
+        }
+        long lastTime = mTimes[mIndex];
+        long elapsed = now - lastTime;
+        //手指已经停下来一段时间了，不作预测
+        if (elapsed > SAMPLE_WINDOW) {
+            return 0;
+        }
+        long lookahead = Math.min(Math.max(elapsed, 0) + FRAME_INTERVAL, maxLookahead);
+
+        //以最后一个采样点为原点做线性拟合，避免大数值时间戳带来的精度问题
+        float lastPosition = mPositions[mIndex];
+        float sumT = 0, sumP = 0, sumTT = 0, sumTP = 0;
+        int n = 0;
+        for (int i = 0; i < mCount; i++) {
+            int index = (mIndex - i + MAX_SAMPLES) % MAX_SAMPLES;
+            float t = mTimes[index] - lastTime;
+            if (-t > SAMPLE_WINDOW) {
+                break;
+            }
+            float p = mPositions[index] - lastPosition;
+            sumT += t;
+            sumP += p;
+            sumTT += t * t;
+            sumTP += t * p;
+            n++;
+        }
+        if (n < 2) {
+            return 0;
+        }
+        float denominator = n * sumTT - sumT * sumT;
+        if (denominator == 0) {
+            return 0;
+        }
+        //单位：像素/毫秒
+        float velocity = (n * sumTP - sumT * sumP) / denominator;
+        return velocity * lookahead;
+    }
+}
@@ -0,0 +1,96 @@
+package com.wuyr.secondfloorbehavior;
+
+import android.annotation.SuppressLint;
+import android.os.Build;
+import android.os.Trace;
+import android.view.MotionEvent;
+
+/**
+ * Systrace/Perfetto 埋点辅助类
+ * 默认关闭，关闭时每个埋点只有一次boolean判断的开销
+ * 调用方需要先用{@link #isEnabled()}读取一次开关并保存到局部变量，beginSection和endSection都根据这个局部变量来决定是否调用，
+ * 避免在Section中途切换开关导致begin和end不配对
+ *
+ * @since 2026-10-18 下午9:50
+ */
+@SuppressLint("NewApi")
+final class TraceHelper {
+
+    static final String SECTION_TOUCH_DOWN = "SFB#onTouchEvent:DOWN";
+    static final String SECTION_TOUCH_MOVE = "SFB#onTouchEvent:MOVE";
+    static final String SECTION_TOUCH_UP = "SFB#onTouchEvent:UP";
+    static final String SECTION_TOUCH_CANCEL = "SFB#onTouchEvent:CANCEL";
+    static final String SECTION_TOUCH_POINTER_DOWN = "SFB#onTouchEvent:POINTER_DOWN";
+    static final String SECTION_TOUCH_POINTER_UP = "SFB#onTouchEvent:POINTER_UP";
+    static final String SECTION_TOUCH_OTHER = "SFB#onTouchEvent:OTHER";
+    static final String SECTION_HANDLE_MOVE = "SFB#handleActionMove";
+    static final String SECTION_DISPATCH = "SFB#dispatchTouchEvent";
+    static final String SECTION_FIX_MOVE_OVERFLOW = "SFB#fixMoveOverflow";
+    static final String SECTION_FAKE_SCROLL = "SFB#fakeScroll";
+    static final String SECTION_LAYOUT_CHANGE = "SFB#onLayoutChange";
+    static final String SECTION_ANIMATION_FRAME = "SFB#onAnimationUpdate";
+
+    static final String COUNTER_STATE = "SFB:state";
+    static final String COUNTER_HEADER_TRANSLATION = "SFB:headerTranslationY";
+
+    /**
+     * 是否开启Section埋点 (API 18+)
+     */
+    private static boolean sEnabled;
+
+    /**
+     * 是否开启Counter埋点 (API 29+)
+     */
+    private static boolean sCounterEnabled;
+
+    private TraceHelper() {
+    }
+
+    static void setEnabled(boolean enabled) {
+        sEnabled = enabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+        sCounterEnabled = enabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q;
+    }
+
+    static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * 只能在{@link #isEnabled()}返回true时调用，并且必须和{@link #endSection()}配对
+     */
+    static void beginSection(String sectionName) {
+        Trace.beginSection(sectionName);
+    }
+
+    static void endSection() {
+        Trace.endSection();
+    }
+
+    static void setCounter(String counterName, long counterValue) {
+        if (sCounterEnabled) {
+            Trace.setCounter(counterName, counterValue);
+        }
+    }
+
+    /**
+     * 根据事件类型获取对应的Section名称（都是常量，不会产生额外的字符串拼接）
+     */
+    static String getTouchSectionName(int actionMasked) {
+        switch (actionMasked) {
+            case MotionEvent.ACTION_DOWN:
+                return SECTION_TOUCH_DOWN;
+            case MotionEvent.ACTION_MOVE:
+                return SECTION_TOUCH_MOVE;
+            case MotionEvent.ACTION_UP:
+                return SECTION_TOUCH_UP;
+            case MotionEvent.ACTION_CANCEL:
+                return SECTION_TOUCH_CANCEL;
+            case MotionEvent.ACTION_POINTER_DOWN:
+                return SECTION_TOUCH_POINTER_DOWN;
+            case MotionEvent.ACTION_POINTER_UP:
+                return SECTION_TOUCH_POINTER_UP;
+            default:
+                return SECTION_TOUCH_OTHER;
+        }
+    }
+}
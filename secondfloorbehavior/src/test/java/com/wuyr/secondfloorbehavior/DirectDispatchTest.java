@@ -0,0 +1,99 @@
+package com.wuyr.secondfloorbehavior;
+
+import android.os.SystemClock;
+import android.view.MotionEvent;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 对比开启和关闭直接分发时，一楼中的子View和中间层级收到的事件
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, qualifiers = "w480dp-h800dp-mdpi")
+public class DirectDispatchTest {
+
+    private static final int HEADER_HEIGHT = 240;
+    private static final float START_INTERCEPT_DISTANCE = 40;
+
+    /**
+     * 中间层级的边距，用来检查坐标的换算
+     */
+    private static final int CONTENT_OFFSET = 30;
+
+    private static final float TOUCH_X = 200;
+    private static final float DOWN_Y = 100;
+    private static final float MOVE_STEP = 10;
+    private static final int MOVE_COUNT = 30;
+    private static final long EVENT_INTERVAL = 16;
+
+    @Test
+    public void scrollingChildReceivesSameEvents() {
+        //内容先往回滚动100像素，然后到顶并开始下拉
+        Result full = replay(false, 200, 100, Float.MAX_VALUE);
+        Result direct = replay(true, 200, 100, Float.MAX_VALUE);
+
+        assertEquals(full.targetEvents, direct.targetEvents);
+        assertEquals(full.headerTranslations, direct.headerTranslations);
+        assertTrue("the pull never started", full.headerTranslations.get(full.headerTranslations.size() - 1) > 0);
+        //跳过了中间层级，它收到的事件要更少
+        assertTrue("direct dispatch was never used, dispatch count: " + direct.contentDispatchCount + " vs " + full.contentDispatchCount,
+                direct.contentDispatchCount < full.contentDispatchCount);
+    }
+
+    @Test
+    public void interceptingParentStillSeesPull() {
+        //内容在顶部，下拉时子View不会消费滑动距离，也不会禁止父View拦截，
+        //中间层级在下拉25像素后（还没有达到开始拦截下拉的距离）拦截
+        Result full = replay(false, 0, 0, 25);
+        Result direct = replay(true, 0, 0, 25);
+
+        assertTrue("the content layout should intercept the pull", full.contentIntercepted);
+        assertTrue("the content layout should intercept the pull with direct dispatch enabled", direct.contentIntercepted);
+        assertEquals(full.targetEvents, direct.targetEvents);
+        assertEquals(full.headerTranslations, direct.headerTranslations);
+        assertEquals(full.contentInterceptCount, direct.contentInterceptCount);
+        assertEquals(full.contentDispatchCount, direct.contentDispatchCount);
+        assertFalse("the child should be cancelled", direct.targetEvents.get(direct.targetEvents.size() - 1).startsWith("ACTION_MOVE"));
+    }
+
+    private Result replay(boolean directDispatch, int scrollRange, int scrollOffset, float interceptDistance) {
+        SecondFloorTestRig rig = new SecondFloorTestRig(HEADER_HEIGHT, CONTENT_OFFSET);
+        rig.behavior.setStartInterceptDistance(START_INTERCEPT_DISTANCE);
+        rig.behavior.setDirectDispatchEnabled(directDispatch);
+        rig.scrollTarget.setScrollRange(scrollRange, scrollOffset);
+        rig.scrollTarget.startEventLog();
+        rig.contentLayout.setInterceptDistance(interceptDistance);
+
+        Result result = new Result();
+        long downTime = SystemClock.uptimeMillis();
+        rig.dispatch(MotionEvent.obtain(downTime, downTime, MotionEvent.ACTION_DOWN, TOUCH_X, DOWN_Y, 0));
+        for (int i = 1; i <= MOVE_COUNT; i++) {
+            rig.advanceTime(EVENT_INTERVAL);
+            rig.dispatch(MotionEvent.obtain(downTime, SystemClock.uptimeMillis(), MotionEvent.ACTION_MOVE, TOUCH_X, DOWN_Y + MOVE_STEP * i, 0));
+            result.headerTranslations.add(rig.getHeaderTranslationY());
+        }
+        result.targetEvents = rig.scrollTarget.getEventLog();
+        result.contentDispatchCount = rig.contentLayout.dispatchCount;
+        result.contentInterceptCount = rig.contentLayout.interceptCount;
+        result.contentIntercepted = rig.contentLayout.isIntercepted();
+        return result;
+    }
+
+    private static final class Result {
+        final List<Float> headerTranslations = new ArrayList<>();
+        List<String> targetEvents;
+        int contentDispatchCount;
+        int contentInterceptCount;
+        boolean contentIntercepted;
+    }
+}
@@ -0,0 +1,147 @@
+package com.wuyr.secondfloorbehavior;
+
+import android.content.Context;
+import android.view.MotionEvent;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * 测试用的一楼滑动子View，跟RecyclerView一样：
+ * 内容还能滚动时先自己消费滑动距离，并禁止父View拦截事件，剩下的距离通过嵌套滑动交给父View处理
+ * 默认没有可以滚动的内容，所有的滑动距离都交给父View处理
+ */
+class NestedScrollTarget extends View {
+
+    final TouchSequenceChecker checker = new TouchSequenceChecker("NestedScrollTarget");
+
+    private int mActivePointerId;
+    private float mLastY;
+
+    private int mScrollRange;
+    private int mScrollOffset;
+
+    private List<String> mEventLog;
+
+    private Random mDisallowRandom;
+    private float mDisallowChance;
+    private int mDisallowCount;
+
+    NestedScrollTarget(Context context) {
+        super(context);
+        setNestedScrollingEnabled(true);
+    }
+
+    /**
+     * @param range  内容可以滚动的总距离
+     * @param offset 内容当前已经滚动的距离，0: 在顶部
+     */
+    void setScrollRange(int range, int offset) {
+        mScrollRange = range;
+        mScrollOffset = offset;
+    }
+
+    /**
+     * 开始记录收到的事件（坐标为自身坐标系）
+     */
+    void startEventLog() {
+        mEventLog = new ArrayList<>();
+    }
+
+    List<String> getEventLog() {
+        return mEventLog;
+    }
+
+    /**
+     * 收到MOVE事件时按一定概率调用requestDisallowInterceptTouchEvent，模拟一楼内部的控件抢夺事件
+     */
+    void setDisallowInterceptChance(Random random, float chance) {
+        mDisallowRandom = random;
+        mDisallowChance = chance;
+    }
+
+    int getDisallowCount() {
+        return mDisallowCount;
+    }
+
+    @Override
+    public boolean canScrollVertically(int direction) {
+        return direction < 0 ? mScrollOffset > 0 : mScrollOffset < mScrollRange;
+    }
+
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent ev) {
+        checker.onTouchEvent(ev);
+        if (mEventLog != null) {
+            mEventLog.add(describe(ev));
+        }
+        return super.dispatchTouchEvent(ev);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent ev) {
+        switch (ev.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                mActivePointerId = ev.getPointerId(0);
+                mLastY = ev.getY();
+                startNestedScroll(SCROLL_AXIS_VERTICAL);
+                break;
+            case MotionEvent.ACTION_POINTER_DOWN:
+                mActivePointerId = ev.getPointerId(ev.getActionIndex());
+                mLastY = ev.getY(ev.getActionIndex());
+                break;
+            case MotionEvent.ACTION_POINTER_UP:
+                if (ev.getPointerCount() > 1 && ev.getPointerId(ev.getActionIndex()) == mActivePointerId) {
+                    int newIndex = ev.getActionIndex() == 0 ? 1 : 0;
+                    mActivePointerId = ev.getPointerId(newIndex);
+                    mLastY = ev.getY(newIndex);
+                }
+                break;
+            case MotionEvent.ACTION_MOVE:
+                int index = ev.findPointerIndex(mActivePointerId);
+                if (index < 0) {
+                    //事件序列完整的话，活跃的手指一定还在
+                    checker.report("MOVE without the active pointer " + mActivePointerId);
+                    break;
+                }
+                int dy = Math.round(mLastY - ev.getY(index));
+                if (dy != 0) {
+                    mLastY -= dy;
+                    scrollContentBy(dy);
+                }
+                if (mDisallowRandom != null && mDisallowRandom.nextFloat() < mDisallowChance) {
+                    mDisallowCount++;
+                    getParent().requestDisallowInterceptTouchEvent(true);
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                stopNestedScroll();
+                break;
+            default:
+                break;
+        }
+        return true;
+    }
+
+    private void scrollContentBy(int dy) {
+        int newOffset = Math.max(0, Math.min(mScrollOffset + dy, mScrollRange));
+        int consumed = newOffset - mScrollOffset;
+        mScrollOffset = newOffset;
+        dispatchNestedScroll(0, consumed, 0, dy - consumed, null);
+        if (consumed != 0) {
+            getParent().requestDisallowInterceptTouchEvent(true);
+        }
+    }
+
+    private static String describe(MotionEvent ev) {
+        StringBuilder builder = new StringBuilder(MotionEvent.actionToString(ev.getAction()));
+        for (int i = 0; i < ev.getPointerCount(); i++) {
+            builder.append(String.format(Locale.US, " %d(%.1f, %.1f)", ev.getPointerId(i), ev.getX(i), ev.getY(i)));
+        }
+        return builder.toString();
+    }
+}
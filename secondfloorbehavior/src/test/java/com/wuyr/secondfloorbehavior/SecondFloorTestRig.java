@@ -0,0 +1,160 @@
+package com.wuyr.secondfloorbehavior;
+
+import android.app.Activity;
+import android.content.Context;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import androidx.annotation.NonNull;
+import androidx.coordinatorlayout.widget.CoordinatorLayout;
+
+import org.robolectric.Robolectric;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测试用的布局：CoordinatorLayout中依次放入HeaderView、二楼和一楼，
+ * 一楼里面有一个中间层级，中间层级里面是一个会发起嵌套滑动的子View
+ */
+final class SecondFloorTestRig {
+
+    final CoordinatorLayout parent;
+    final View headerView;
+    final View secondFloorView;
+    final CheckedFrameLayout firstFloorView;
+    final InterceptingLayout contentLayout;
+    final NestedScrollTarget scrollTarget;
+    final SecondFloorBehavior behavior;
+
+    SecondFloorTestRig(int headerHeight) {
+        this(headerHeight, 0);
+    }
+
+    /**
+     * @param contentOffset 中间层级在一楼中的左边距和上边距
+     */
+    SecondFloorTestRig(int headerHeight, int contentOffset) {
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        parent = new CoordinatorLayout(activity);
+
+        headerView = new View(activity);
+        parent.addView(headerView, new CoordinatorLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, headerHeight));
+
+        secondFloorView = new View(activity);
+        CoordinatorLayout.LayoutParams lp = new CoordinatorLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT);
+        behavior = new SecondFloorBehavior();
+        lp.setBehavior(behavior);
+        parent.addView(secondFloorView, lp);
+
+        firstFloorView = new CheckedFrameLayout(activity);
+        contentLayout = new InterceptingLayout(activity);
+        FrameLayout.LayoutParams contentLp = new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT);
+        contentLp.leftMargin = contentOffset;
+        contentLp.topMargin = contentOffset;
+        firstFloorView.addView(contentLayout, contentLp);
+        scrollTarget = new NestedScrollTarget(activity);
+        contentLayout.addView(scrollTarget, new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        parent.addView(firstFloorView, new CoordinatorLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+
+        activity.setContentView(parent);
+        ShadowLooper.idleMainLooper();
+    }
+
+    /**
+     * 让时钟往前走，期间到期的动画帧和延时任务都会被执行
+     */
+    void advanceTime(long millis) {
+        Robolectric.getForegroundThreadScheduler().advanceBy(millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 把事件交给CoordinatorLayout分发，分发完后回收
+     */
+    boolean dispatch(@NonNull MotionEvent ev) {
+        try {
+            return parent.dispatchTouchEvent(ev);
+        } finally {
+            ev.recycle();
+        }
+    }
+
+    float getHeaderTranslationY() {
+        return headerView.getTranslationY();
+    }
+
+    /**
+     * 一楼：记录并检查收到的事件序列
+     */
+    static final class CheckedFrameLayout extends FrameLayout {
+
+        final TouchSequenceChecker checker = new TouchSequenceChecker("FirstFloorView");
+
+        CheckedFrameLayout(Context context) {
+            super(context);
+        }
+
+        @Override
+        public boolean dispatchTouchEvent(MotionEvent ev) {
+            checker.onTouchEvent(ev);
+            return super.dispatchTouchEvent(ev);
+        }
+    }
+
+    /**
+     * 一楼的中间层级：跟下拉刷新控件一样，往下拉超过指定距离后拦截事件，默认不拦截
+     */
+    static final class InterceptingLayout extends FrameLayout {
+
+        private float mInterceptDistance = Float.MAX_VALUE;
+        private float mDownY;
+        private boolean mIntercepted;
+
+        int dispatchCount;
+        int interceptCount;
+
+        InterceptingLayout(Context context) {
+            super(context);
+        }
+
+        void setInterceptDistance(float distance) {
+            mInterceptDistance = distance;
+        }
+
+        boolean isIntercepted() {
+            return mIntercepted;
+        }
+
+        @Override
+        public boolean dispatchTouchEvent(MotionEvent ev) {
+            dispatchCount++;
+            return super.dispatchTouchEvent(ev);
+        }
+
+        @Override
+        public boolean onInterceptTouchEvent(MotionEvent ev) {
+            interceptCount++;
+            switch (ev.getActionMasked()) {
+                case MotionEvent.ACTION_DOWN:
+                    mDownY = ev.getY();
+                    mIntercepted = false;
+                    break;
+                case MotionEvent.ACTION_MOVE:
+                    if (ev.getY() - mDownY > mInterceptDistance) {
+                        mIntercepted = true;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            return mIntercepted;
+        }
+
+        @Override
+        public boolean onTouchEvent(MotionEvent ev) {
+            return mIntercepted;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.wuyr.secondfloorbehavior;
+
+import android.os.SystemClock;
+import android.view.MotionEvent;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 回放一段MOVE事件流，对比开启和关闭触摸预测时，HeaderView的偏移量落后于手指的距离
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, qualifiers = "w480dp-h800dp-mdpi")
+public class TouchPredictionLagTest {
+
+    private static final int HEADER_HEIGHT = 300;
+    private static final float START_INTERCEPT_DISTANCE = 40;
+    private static final long LOOKAHEAD = 16;
+
+    /**
+     * 采样间隔（120Hz）
+     */
+    private static final long SAMPLE_INTERVAL = 8;
+
+    /**
+     * 每个MOVE事件合并的采样点数量（60Hz分发）
+     */
+    private static final int SAMPLES_PER_EVENT = 2;
+
+    private static final float TOUCH_X = 200;
+
+    /**
+     * 回放用的手指y坐标：每8毫秒一个采样点，先加速再匀速下拉，带有轻微的抖动
+     * 第一个采样点是DOWN事件，后面每2个采样点合并成一个MOVE事件，所以长度是奇数
+     */
+    private static final float[] RECORDED_Y = {
+            59.9F, 59.9F, 60.7F, 60.8F, 61.9F, 62.8F, 63.7F, 65.4F, 66.5F, 68.6F, 70.2F, 72.3F, 74.9F, 77.7F, 79.9F,
+            82.8F, 86.2F, 89.7F, 92.9F, 96.4F, 100.7F, 104.0F, 108.9F, 112.8F, 117.3F, 122.1F, 127.0F, 132.3F, 136.5F,
+            141.7F, 146.5F, 151.1F, 156.0F, 160.5F, 165.2F, 170.2F, 175.3F, 179.9F, 184.7F, 189.7F, 194.4F, 199.0F,
+            204.2F, 209.0F, 213.4F, 218.5F, 223.2F, 228.3F, 233.0F, 237.4F, 242.8F, 246.9F, 251.9F, 257.0F, 261.3F,
+            266.4F, 270.8F, 276.1F, 281.0F, 285.7F, 290.7F, 295.1F, 300.2F, 304.9F, 309.7F, 314.4F, 319.5F, 324.4F,
+            328.8F, 333.7F, 338.0F
+    };
+
+    @Test
+    public void predictionReducesLag() {
+        float[] baseline = replay(0, null);
+        float[] predicted = replay(LOOKAHEAD, null);
+
+        float baselineLag = 0, predictedLag = 0;
+        int frames = 0;
+        for (int i = SAMPLES_PER_EVENT; i + SAMPLES_PER_EVENT < RECORDED_Y.length; i += SAMPLES_PER_EVENT) {
+            //只统计已经开始下拉、并且没有被HeaderView高度限制住的帧
+            if (baseline[i] <= 0 || predicted[i] >= HEADER_HEIGHT) {
+                continue;
+            }
+            //下一帧显示出来时手指所在的位置，减去当前帧的偏移量就是落后的距离
+            //关闭预测时，偏移量和手指位置的差值是固定的，所以落后的距离就等于这一帧内手指移动的距离
+            float fingerAdvance = RECORDED_Y[i + SAMPLES_PER_EVENT] - RECORDED_Y[i];
+            baselineLag += Math.abs(fingerAdvance);
+            predictedLag += Math.abs(fingerAdvance - (predicted[i] - baseline[i]));
+            frames++;
+        }
+        assertTrue("not enough frames after the pull started: " + frames, frames >= 10);
+        baselineLag /= frames;
+        predictedLag /= frames;
+        System.out.printf("TouchPredictionLagTest: %d frames, mean lag without prediction: %.2fpx, with prediction(%dms): %.2fpx%n",
+                frames, baselineLag, LOOKAHEAD, predictedLag);
+        assertTrue("prediction should at least halve the lag, without: " + baselineLag + ", with: " + predictedLag,
+                predictedLag < baselineLag / 2);
+    }
+
+    @Test
+    public void predictionIsRemovedWhenFingerRests() {
+        float[] baseline = replay(0, null);
+        SecondFloorTestRig[] holder = new SecondFloorTestRig[1];
+        float[] predicted = replay(LOOKAHEAD, holder);
+        SecondFloorTestRig rig = holder[0];
+
+        int last = RECORDED_Y.length - 1;
+        assertTrue("the last frame should carry a predicted offset", predicted[last] - baseline[last] > 1);
+
+        //手指停住不动，不会再有MOVE事件，预测时长过去后HeaderView要回到手指真实的位置
+        rig.advanceTime(LOOKAHEAD + SAMPLE_INTERVAL * SAMPLES_PER_EVENT);
+        assertEquals(baseline[last], rig.getHeaderTranslationY(), 0.01F);
+    }
+
+    /**
+     * 回放事件流
+     *
+     * @param lookahead 预测时长，0: 不预测
+     * @param holder    不为null时，把回放用的布局保存进去，并且不发送UP事件
+     * @return 每个采样点所在的MOVE事件分发完后，HeaderView的偏移量
+     */
+    private float[] replay(long lookahead, SecondFloorTestRig[] holder) {
+        SecondFloorTestRig rig = new SecondFloorTestRig(HEADER_HEIGHT);
+        rig.behavior.setStartInterceptDistance(START_INTERCEPT_DISTANCE);
+        rig.behavior.setMinTriggerDistance(HEADER_HEIGHT);
+        rig.behavior.setPredictionLookahead(lookahead);
+        float[] translations = new float[RECORDED_Y.length];
+
+        long downTime = SystemClock.uptimeMillis();
+        rig.dispatch(MotionEvent.obtain(downTime, downTime, MotionEvent.ACTION_DOWN, TOUCH_X, RECORDED_Y[0], 0));
+        for (int i = SAMPLES_PER_EVENT; i < RECORDED_Y.length; i += SAMPLES_PER_EVENT) {
+            rig.advanceTime(SAMPLE_INTERVAL * SAMPLES_PER_EVENT);
+            int first = i - SAMPLES_PER_EVENT + 1;
+            MotionEvent ev = MotionEvent.obtain(downTime, downTime + first * SAMPLE_INTERVAL,
+                    MotionEvent.ACTION_MOVE, TOUCH_X, RECORDED_Y[first], 0);
+            for (int j = first + 1; j <= i; j++) {
+                ev.addBatch(downTime + j * SAMPLE_INTERVAL, TOUCH_X, RECORDED_Y[j], 1, 1, 0);
+            }
+            rig.dispatch(ev);
+            translations[i] = rig.getHeaderTranslationY();
+            assertTrue("header translation out of range: " + translations[i],
+                    translations[i] >= 0 && translations[i] <= HEADER_HEIGHT);
+        }
+        if (holder != null) {
+            holder[0] = rig;
+        } else {
+            long now = SystemClock.uptimeMillis();
+            rig.dispatch(MotionEvent.obtain(downTime, now, MotionEvent.ACTION_UP, TOUCH_X, RECORDED_Y[RECORDED_Y.length - 1], 0));
+        }
+        return translations;
+    }
+}
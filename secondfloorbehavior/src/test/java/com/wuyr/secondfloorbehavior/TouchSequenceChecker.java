@@ -0,0 +1,118 @@
+package com.wuyr.secondfloorbehavior;
+
+import android.view.MotionEvent;
+
+/**
+ * 检查View收到的事件序列是否完整：
+ * 1. 每个事件序列都要以DOWN开始，以UP或CANCEL结束，序列之外不能收到其他事件；
+ * 2. POINTER_DOWN只能按下还没有按下的手指，POINTER_UP只能抬起已经按下的手指，最后一根手指要通过UP抬起；
+ * 3. 除了CANCEL，每个事件中的手指都要跟当前按下的手指完全一致
+ */
+final class TouchSequenceChecker {
+
+    private final String mName;
+    //当前按下的手指id（按位记录）
+    private int mPointerIdBits;
+    private boolean mActive;
+    private String mViolation;
+
+    TouchSequenceChecker(String name) {
+        mName = name;
+    }
+
+    void onTouchEvent(MotionEvent ev) {
+        int action = ev.getActionMasked();
+        String actionName = MotionEvent.actionToString(ev.getAction());
+        if (action == MotionEvent.ACTION_DOWN) {
+            if (mActive) {
+                report("DOWN while the previous gesture is still open");
+            } else if (ev.getPointerCount() != 1) {
+                report("DOWN with " + ev.getPointerCount() + " pointers");
+            }
+            mActive = true;
+            mPointerIdBits = getPointerIdBits(ev);
+            return;
+        }
+        if (!mActive) {
+            report(actionName + " outside of a gesture");
+            return;
+        }
+        if (action == MotionEvent.ACTION_CANCEL) {
+            mActive = false;
+            mPointerIdBits = 0;
+            return;
+        }
+        int pointerIdBits = getPointerIdBits(ev);
+        int actionIdBit = 1 << ev.getPointerId(ev.getActionIndex());
+        switch (action) {
+            case MotionEvent.ACTION_POINTER_DOWN:
+                if ((mPointerIdBits & actionIdBit) != 0) {
+                    report(actionName + " for a pointer that is already down");
+                } else if ((pointerIdBits & ~actionIdBit) != mPointerIdBits) {
+                    report(actionName + " with pointers " + describe(pointerIdBits) + " while " + describe(mPointerIdBits) + " are down");
+                }
+                mPointerIdBits = pointerIdBits;
+                break;
+            case MotionEvent.ACTION_POINTER_UP:
+                if ((mPointerIdBits & actionIdBit) == 0) {
+                    report(actionName + " for a pointer that is not down");
+                } else if (pointerIdBits != mPointerIdBits) {
+                    report(actionName + " with pointers " + describe(pointerIdBits) + " while " + describe(mPointerIdBits) + " are down");
+                } else if (pointerIdBits == actionIdBit) {
+                    report(actionName + " for the last pointer");
+                }
+                mPointerIdBits = pointerIdBits & ~actionIdBit;
+                break;
+            case MotionEvent.ACTION_UP:
+                if (pointerIdBits != mPointerIdBits || ev.getPointerCount() != 1) {
+                    report(actionName + " with pointers " + describe(pointerIdBits) + " while " + describe(mPointerIdBits) + " are down");
+                }
+                mActive = false;
+                mPointerIdBits = 0;
+                break;
+            default:
+                if (pointerIdBits != mPointerIdBits) {
+                    report(actionName + " with pointers " + describe(pointerIdBits) + " while " + describe(mPointerIdBits) + " are down");
+                }
+                break;
+        }
+    }
+
+    boolean isActive() {
+        return mActive;
+    }
+
+    /**
+     * @return 第一次出现的错误，没有错误时返回null
+     */
+    String getViolation() {
+        return mViolation;
+    }
+
+    void report(String message) {
+        if (mViolation == null) {
+            mViolation = mName + ": " + message;
+        }
+    }
+
+    private static int getPointerIdBits(MotionEvent ev) {
+        int bits = 0;
+        for (int i = 0; i < ev.getPointerCount(); i++) {
+            bits |= 1 << ev.getPointerId(i);
+        }
+        return bits;
+    }
+
+    private static String describe(int pointerIdBits) {
+        StringBuilder builder = new StringBuilder("[");
+        for (int id = 0; id < 32; id++) {
+            if ((pointerIdBits & (1 << id)) != 0) {
+                if (builder.length() > 1) {
+                    builder.append(", ");
+                }
+                builder.append(id);
+            }
+        }
+        return builder.append(']').toString();
+    }
+}
@@ -0,0 +1,360 @@
+package com.wuyr.secondfloorbehavior;
+
+import android.os.SystemClock;
+import android.view.InputDevice;
+import android.view.MotionEvent;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+import static com.wuyr.secondfloorbehavior.SecondFloorBehavior.STATE_CLOSING;
+import static com.wuyr.secondfloorbehavior.SecondFloorBehavior.STATE_DRAGGING;
+import static com.wuyr.secondfloorbehavior.SecondFloorBehavior.STATE_NORMAL;
+import static com.wuyr.secondfloorbehavior.SecondFloorBehavior.STATE_OPENED;
+import static com.wuyr.secondfloorbehavior.SecondFloorBehavior.STATE_OPENING;
+import static com.wuyr.secondfloorbehavior.SecondFloorBehavior.STATE_PREPARED;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 随机生成多指的触摸事件流（包括随机的CANCEL、切换活跃手指、一楼调用requestDisallowInterceptTouchEvent），
+ * 高频率地交给Behavior处理，并检查：
+ * 1. 不会抛出异常；
+ * 2. 除了进入和离开二楼的过程，HeaderView的偏移量始终在[0, HeaderView高度]之间；
+ * 3. 状态只会按合法的顺序切换；
+ * 4. 一楼和一楼中的子View收到的事件序列始终是完整的（以DOWN开始，以UP或CANCEL结束，手指的按下和抬起一一对应）
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, qualifiers = "w480dp-h800dp-mdpi")
+public class TouchStreamFuzzTest {
+
+    private static final int HEADER_HEIGHT = 240;
+    private static final int GESTURE_COUNT = 400;
+    private static final int MAX_POINTERS = 3;
+
+    /**
+     * 事件间隔（毫秒），比真实的触摸采样还要密集
+     */
+    private static final long EVENT_INTERVAL = 4;
+
+    /**
+     * 手势结束后等待动画播放完的帧数
+     */
+    private static final int SETTLE_FRAMES = 100;
+    private static final long FRAME_INTERVAL = 16;
+
+    private static final float CANCEL_CHANCE = 0.15F;
+    private static final float DISALLOW_INTERCEPT_CHANCE = 0.02F;
+    private static final float EPSILON = 0.5F;
+
+    /**
+     * 合法的状态切换，下标为旧状态
+     */
+    private static final int[][] ALLOWED_TRANSITIONS = {
+            /* STATE_NORMAL */ {STATE_DRAGGING, STATE_OPENING},
+            /* STATE_DRAGGING */ {STATE_NORMAL, STATE_PREPARED, STATE_OPENING},
+            /* STATE_PREPARED */ {STATE_NORMAL, STATE_DRAGGING, STATE_OPENING},
+            /* STATE_OPENING */ {STATE_OPENED},
+            /* STATE_OPENED */ {STATE_CLOSING},
+            /* STATE_CLOSING */ {STATE_NORMAL},
+    };
+
+    @Test
+    public void fuzzDefault() {
+        Fuzzer fuzzer = new Fuzzer(0x5F1L, true);
+        fuzzer.mRig.behavior.setStartInterceptDistance(48);
+        fuzzer.mRig.behavior.setDampingRatio(.3F);
+        //只有这里会插入不完整的POINTER_UP事件：开启手势方向判断后，事件会先交给一楼自己处理，
+        //这时ViewGroup对不完整事件的处理方式不在Behavior的控制范围内
+        run("default", fuzzer);
+    }
+
+    @Test
+    public void fuzzWithPredictionAndAxisLock() {
+        Fuzzer fuzzer = new Fuzzer(0x5F2L, false);
+        fuzzer.mRig.behavior.setStartInterceptDistance(48);
+        fuzzer.mRig.behavior.setDampingRatio(.3F);
+        fuzzer.mRig.behavior.setPredictionLookahead(16);
+        fuzzer.mRig.behavior.setMaxPredictionOffset(24);
+        fuzzer.mRig.behavior.setAxisLockEnabled(true);
+        run("prediction+axisLock", fuzzer);
+    }
+
+    private void run(String name, Fuzzer fuzzer) {
+        for (int i = 0; i < GESTURE_COUNT; i++) {
+            try {
+                fuzzer.runGesture();
+            } catch (Throwable t) {
+                throw new AssertionError(name + " (seed: " + fuzzer.mSeed + ", gesture: " + i + "): " + t.getMessage(), t);
+            }
+        }
+        fuzzer.report(name);
+        //确保随机事件流确实覆盖到了要测试的路径
+        assertTrue(name + ": no gesture pulled the header", fuzzer.mPulledGestures > 0);
+        assertTrue(name + ": never entered the second floor", fuzzer.mEnteredCount > 0);
+        assertTrue(name + ": no CANCEL was sent", fuzzer.mCancelCount > 0);
+        assertTrue(name + ": the primary pointer was never lifted", fuzzer.mSwapCount > 0);
+        assertTrue(name + ": requestDisallowInterceptTouchEvent was never called", fuzzer.mRig.scrollTarget.getDisallowCount() > 0);
+        if (fuzzer.mMalformedPointerUp) {
+            assertTrue(name + ": no malformed POINTER_UP was sent", fuzzer.mMalformedCount > 0);
+        }
+    }
+
+    private static final class Fuzzer {
+
+        final SecondFloorTestRig mRig;
+        final long mSeed;
+        final boolean mMalformedPointerUp;
+        private final Random mRandom;
+
+        private final int[] mIds = new int[MAX_POINTERS];
+        private final float[] mXs = new float[MAX_POINTERS];
+        private final float[] mYs = new float[MAX_POINTERS];
+        private int mPointerCount;
+        private long mDownTime;
+
+        private int mLastState = STATE_NORMAL;
+        private String mViolation;
+        private boolean mPulled;
+
+        private long mEventCount;
+        private long mDispatchNanos;
+        int mPulledGestures;
+        int mEnteredCount;
+        int mCancelCount;
+        int mSwapCount;
+        int mMalformedCount;
+
+        Fuzzer(long seed, boolean malformedPointerUp) {
+            mSeed = seed;
+            mRandom = new Random(seed);
+            mMalformedPointerUp = malformedPointerUp;
+            mRig = new SecondFloorTestRig(HEADER_HEIGHT);
+            mRig.scrollTarget.setDisallowInterceptChance(mRandom, DISALLOW_INTERCEPT_CHANCE);
+            mRig.behavior.setOnStateChangeListener(new OnStateChangeListener() {
+                @Override
+                public void onStateChange(int state) {
+                    checkTransition(state);
+                }
+            });
+            mRig.behavior.setOnBeforeEnterSecondFloorListener(new OnBeforeEnterSecondFloorListener() {
+                @Override
+                public boolean onBeforeEnterSecondFloor() {
+                    //偶尔拒绝进入二楼，覆盖回退并把UP事件交回一楼的分支
+                    return mRandom.nextInt(4) != 0;
+                }
+            });
+        }
+
+        void runGesture() {
+            int width = mRig.parent.getWidth();
+            int height = mRig.parent.getHeight();
+            mPulled = false;
+
+            mPointerCount = 1;
+            mIds[0] = 0;
+            mXs[0] = mRandom.nextFloat() * width;
+            mYs[0] = mRandom.nextFloat() * height / 3;
+            mDownTime = SystemClock.uptimeMillis();
+            dispatch(obtain(MotionEvent.ACTION_DOWN, mDownTime));
+
+            int steps = 5 + mRandom.nextInt(60);
+            for (int i = 0; i < steps; i++) {
+                mRig.advanceTime(EVENT_INTERVAL);
+                checkInvariants();
+                float r = mRandom.nextFloat();
+                if (r < .05F && mPointerCount < MAX_POINTERS) {
+                    pointerDown(width, height);
+                } else if (r < .1F && mPointerCount > 1) {
+                    pointerUp(mRandom.nextInt(mPointerCount));
+                } else if (r < .12F && mMalformedPointerUp && mPointerCount == 1) {
+                    //不完整的事件序列：只剩一根手指时收到POINTER_UP，手指并没有真正抬起
+                    mMalformedCount++;
+                    dispatch(obtain(MotionEvent.ACTION_POINTER_UP, SystemClock.uptimeMillis()));
+                } else {
+                    move(width, height);
+                }
+            }
+
+            mRig.advanceTime(EVENT_INTERVAL);
+            if (mRandom.nextFloat() < CANCEL_CHANCE) {
+                mCancelCount++;
+                dispatch(obtain(MotionEvent.ACTION_CANCEL, SystemClock.uptimeMillis()));
+            } else {
+                while (mPointerCount > 1) {
+                    pointerUp(mRandom.nextInt(mPointerCount));
+                }
+                dispatch(obtain(MotionEvent.ACTION_UP, SystemClock.uptimeMillis()));
+            }
+            if (mPulled) {
+                mPulledGestures++;
+            }
+            settle();
+        }
+
+        /**
+         * 等待动画播放完，如果进入了二楼就离开，最后所有东西都应该回到初始状态
+         */
+        private void settle() {
+            for (int i = 0; i < SETTLE_FRAMES; i++) {
+                mRig.advanceTime(FRAME_INTERVAL);
+                checkInvariants();
+                if (mRig.behavior.getState() == STATE_OPENED) {
+                    mEnteredCount++;
+                    mRig.behavior.leaveSecondFloor();
+                }
+            }
+            if (mRig.behavior.getState() != STATE_NORMAL) {
+                fail("state " + mRig.behavior.getState() + " after the gesture settled");
+            }
+            if (Math.abs(mRig.getHeaderTranslationY()) > EPSILON) {
+                fail("header translation " + mRig.getHeaderTranslationY() + " after the gesture settled");
+            }
+            if (mRig.firstFloorView.checker.isActive()) {
+                fail("FirstFloorView: gesture never finished");
+            }
+            if (mRig.scrollTarget.checker.isActive()) {
+                fail("NestedScrollTarget: gesture never finished");
+            }
+        }
+
+        private void pointerDown(int width, int height) {
+            //新手指使用最小的空闲id，并按id顺序插入
+            int id = 0;
+            int index = 0;
+            while (index < mPointerCount && mIds[index] == id) {
+                id++;
+                index++;
+            }
+            System.arraycopy(mIds, index, mIds, index + 1, mPointerCount - index);
+            System.arraycopy(mXs, index, mXs, index + 1, mPointerCount - index);
+            System.arraycopy(mYs, index, mYs, index + 1, mPointerCount - index);
+            mIds[index] = id;
+            mXs[index] = mRandom.nextFloat() * width;
+            mYs[index] = mRandom.nextFloat() * height;
+            mPointerCount++;
+            dispatch(obtain(MotionEvent.ACTION_POINTER_DOWN | (index << MotionEvent.ACTION_POINTER_INDEX_SHIFT), SystemClock.uptimeMillis()));
+        }
+
+        private void pointerUp(int index) {
+            if (index == 0) {
+                //抬起的是第一根手指，后面的手指下标都会改变
+                mSwapCount++;
+            }
+            dispatch(obtain(MotionEvent.ACTION_POINTER_UP | (index << MotionEvent.ACTION_POINTER_INDEX_SHIFT), SystemClock.uptimeMillis()));
+            mPointerCount--;
+            System.arraycopy(mIds, index + 1, mIds, index, mPointerCount - index);
+            System.arraycopy(mXs, index + 1, mXs, index, mPointerCount - index);
+            System.arraycopy(mYs, index + 1, mYs, index, mPointerCount - index);
+        }
+
+        /**
+         * 所有手指一起移动，一个事件中随机合并1~3个采样点
+         */
+        private void move(int width, int height) {
+            int samples = 1 + mRandom.nextInt(3);
+            float[] startX = mXs.clone();
+            float[] startY = mYs.clone();
+            float[] dx = new float[mPointerCount];
+            float[] dy = new float[mPointerCount];
+            for (int i = 0; i < mPointerCount; i++) {
+                dx[i] = mRandom.nextFloat() * 20 - 10;
+                //偏向往下拉，这样才能经常触发二楼的下拉
+                dy[i] = mRandom.nextFloat() * 70 - 20;
+            }
+            long now = SystemClock.uptimeMillis();
+            MotionEvent ev = null;
+            for (int k = 1; k <= samples; k++) {
+                for (int i = 0; i < mPointerCount; i++) {
+                    mXs[i] = Math.max(0, Math.min(startX[i] + dx[i] * k / samples, width - 1));
+                    mYs[i] = Math.max(0, Math.min(startY[i] + dy[i] * k / samples, height - 1));
+                }
+                long time = now - (samples - k);
+                if (ev == null) {
+                    ev = obtain(MotionEvent.ACTION_MOVE, time);
+                } else {
+                    ev.addBatch(time, createPointerCoords(), 0);
+                }
+            }
+            dispatch(ev);
+        }
+
+        private void dispatch(MotionEvent ev) {
+            long start = System.nanoTime();
+            mRig.dispatch(ev);
+            mDispatchNanos += System.nanoTime() - start;
+            mEventCount++;
+            checkInvariants();
+        }
+
+        private void checkInvariants() {
+            if (mViolation != null) {
+                fail(mViolation);
+            }
+            String sequenceViolation = mRig.firstFloorView.checker.getViolation();
+            if (sequenceViolation == null) {
+                sequenceViolation = mRig.scrollTarget.checker.getViolation();
+            }
+            if (sequenceViolation != null) {
+                fail(sequenceViolation);
+            }
+            int state = mRig.behavior.getState();
+            if (state != STATE_OPENING && state != STATE_OPENED && state != STATE_CLOSING) {
+                float translation = mRig.getHeaderTranslationY();
+                if (translation < -EPSILON || translation > HEADER_HEIGHT + EPSILON) {
+                    fail("header translation " + translation + " out of [0, " + HEADER_HEIGHT + "] in state " + state);
+                }
+                if (translation > EPSILON && (state == STATE_DRAGGING || state == STATE_PREPARED)) {
+                    mPulled = true;
+                }
+            }
+        }
+
+        private void checkTransition(int newState) {
+            for (int allowed : ALLOWED_TRANSITIONS[mLastState]) {
+                if (allowed == newState) {
+                    mLastState = newState;
+                    return;
+                }
+            }
+            if (mViolation == null) {
+                mViolation = "illegal state transition: " + mLastState + " -> " + newState;
+            }
+            mLastState = newState;
+        }
+
+        void report(String name) {
+            double seconds = mDispatchNanos / 1e9;
+            System.out.printf("TouchStreamFuzzTest[%s]: %d events in %.1fms (%.0f events/s), %d pulls, %d entered, %d cancels, %d swaps, %d disallow requests, %d malformed%n",
+                    name, mEventCount, seconds * 1000, mEventCount / seconds, mPulledGestures, mEnteredCount, mCancelCount,
+                    mSwapCount, mRig.scrollTarget.getDisallowCount(), mMalformedCount);
+        }
+
+        private MotionEvent obtain(int action, long eventTime) {
+            MotionEvent.PointerProperties[] properties = new MotionEvent.PointerProperties[mPointerCount];
+            for (int i = 0; i < mPointerCount; i++) {
+                properties[i] = new MotionEvent.PointerProperties();
+                properties[i].id = mIds[i];
+                properties[i].toolType = MotionEvent.TOOL_TYPE_FINGER;
+            }
+            return MotionEvent.obtain(mDownTime, eventTime, action, mPointerCount, properties, createPointerCoords(),
+                    0, 0, 1, 1, 0, 0, InputDevice.SOURCE_TOUCHSCREEN, 0);
+        }
+
+        private MotionEvent.PointerCoords[] createPointerCoords() {
+            MotionEvent.PointerCoords[] coords = new MotionEvent.PointerCoords[mPointerCount];
+            for (int i = 0; i < mPointerCount; i++) {
+                coords[i] = new MotionEvent.PointerCoords();
+                coords[i].x = mXs[i];
+                coords[i].y = mYs[i];
+                coords[i].pressure = 1;
+                coords[i].size = 1;
+            }
+            return coords;
+        }
+    }
+}